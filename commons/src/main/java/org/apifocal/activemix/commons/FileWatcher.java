@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.commons;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches the files of a directory and reports the ones which were created, modified or deleted.
+ *
+ * Changes are detected by comparing file modification times and sizes, on every {@link WatchService}
+ * event and at least once per poll interval. The poll makes up for file systems on which the watch
+ * service is unavailable or unreliable (network mounts, some container overlays). The listener is
+ * called on the watcher thread, once per changed file.
+ */
+public class FileWatcher implements Closeable {
+
+    public static final long DEFAULT_POLL_INTERVAL = 5000L;
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileWatcher.class);
+
+    private final Path directory;
+    private final Predicate<Path> filter;
+    private final Consumer<Path> listener;
+    private final long pollInterval;
+    private final Map<Path, Long> stamps = new HashMap<>();
+    private volatile boolean running;
+    private Thread thread;
+    private volatile WatchService watchService;
+
+    public FileWatcher(Path directory, Predicate<Path> filter, Consumer<Path> listener) {
+        this(directory, filter, listener, DEFAULT_POLL_INTERVAL);
+    }
+
+    public FileWatcher(Path directory, Predicate<Path> filter, Consumer<Path> listener, long pollInterval) {
+        this.directory = directory.toAbsolutePath();
+        this.filter = filter;
+        this.listener = listener;
+        this.pollInterval = pollInterval > 0 ? pollInterval : DEFAULT_POLL_INTERVAL;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        scan(false);
+        try {
+            watchService = directory.getFileSystem().newWatchService();
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException | UnsupportedOperationException e) {
+            LOG.info("Cannot watch {}, polling every {}ms instead: {}", directory, pollInterval, e.getMessage());
+            closeWatchService();
+        }
+
+        running = true;
+        thread = new Thread(this::run, "activemix-watcher-" + directory.getFileName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public synchronized void close() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+        closeWatchService();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void run() {
+        LOG.debug("Watching {}", directory);
+        while (running) {
+            try {
+                if (watchService != null) {
+                    WatchKey key = watchService.poll(pollInterval, TimeUnit.MILLISECONDS);
+                    if (key != null) {
+                        // events only tell that something changed, the scan below tells what
+                        key.pollEvents();
+                        if (!key.reset()) {
+                            LOG.warn("Directory {} is no longer accessible, polling instead", directory);
+                            closeWatchService();
+                        }
+                    }
+                } else {
+                    Thread.sleep(pollInterval);
+                }
+                scan(true);
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                break;
+            } catch (RuntimeException e) {
+                LOG.warn("Error while watching {}", directory, e);
+            }
+        }
+        LOG.debug("Stopped watching {}", directory);
+    }
+
+    private void scan(boolean notify) {
+        Set<Path> seen = new HashSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                if (!filter.test(file)) {
+                    continue;
+                }
+                seen.add(file);
+                long stamp = stamp(file);
+                Long previous = stamps.put(file, stamp);
+                if (notify && (previous == null || previous != stamp)) {
+                    changed(file);
+                }
+            }
+        } catch (IOException e) {
+            LOG.debug("Cannot list {}: {}", directory, e.getMessage());
+            return;
+        }
+
+        for (Path file : new HashSet<>(stamps.keySet())) {
+            if (!seen.contains(file)) {
+                stamps.remove(file);
+                if (notify) {
+                    changed(file);
+                }
+            }
+        }
+    }
+
+    private void changed(Path file) {
+        LOG.debug("Detected change of {}", file);
+        try {
+            listener.accept(file);
+        } catch (RuntimeException | InternalError e) {
+            // internal errors come from faults reading memory-mapped files changed meanwhile
+            LOG.warn("Failed to process change of {}", file, e);
+        }
+    }
+
+    private synchronized void closeWatchService() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOG.debug("Failed to close watch service", e);
+            }
+            watchService = null;
+        }
+    }
+
+    private static long stamp(Path file) {
+        // size is mixed in, some file systems only keep modification times to the second
+        try {
+            return Files.getLastModifiedTime(file).toMillis() * 31 + Files.size(file);
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+}
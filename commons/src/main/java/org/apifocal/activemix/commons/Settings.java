@@ -26,49 +26,49 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.function.Predicate;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
  * Settings utility for reading LoginModule configuration properties in more handy way.
+ *
+ * Options are copied once into a sorted map shared by all subsets, so a lookup is a single
+ * map access. Keys are dotted paths matched segment by segment: {@code subset("cache")} sees
+ * {@code cache.size} but not {@code caches.size}. Typed options are parsed on first access
+ * and remembered.
  */
 public final class Settings {
     private static final Logger LOG = LoggerFactory.getLogger(Settings.class);
 
-    private final Map<String, ?> config;
+    private final NavigableMap<String, Object> config;
     private final String prefix;
-    private final Predicate<Map.Entry<String, ?>> predicate;
+    private final ConcurrentMap<String, Optional<?>> parsed;
 
     public Settings(Map<String, ?> config) {
-        this(config, "", (entry) -> true);
+        this(index(config), "", new ConcurrentHashMap<>());
     }
 
-    Settings(Map<String, ?> config, String prefix, Predicate<Map.Entry<String, ?>> predicate) {
+    private Settings(NavigableMap<String, Object> config, String prefix, ConcurrentMap<String, Optional<?>> parsed) {
         this.config = config;
         this.prefix = prefix;
-        this.predicate = predicate;
+        this.parsed = parsed;
     }
 
     public Settings subset(String ... path) {
-        return subset(Arrays.stream(path).reduce((s1, s2) -> s1 + "." + s2).orElse(""));
+        return subset(String.join(".", path));
     }
 
     public Settings subset(String name) {
-        return subset(name, keyPredicate(name));
-    }
-
-    private Settings subset(String prefix, Predicate<Map.Entry<String, ?>> predicate) {
-        return new Settings(config, prefix, predicate);
-    }
-
-    private Predicate<Map.Entry<String, ?>> keyPredicate(String name) {
-        return new Predicate<Map.Entry<String, ?>>() {
-            @Override
-            public boolean test(Map.Entry<String, ?> entry) {
-                return entry.getKey().startsWith(name);
-            }
-        };
+        if (name.isEmpty()) {
+            return this;
+        }
+        String path = prefix + name + ".";
+        // only the entries under the path remain visible, the parsed values stay shared
+        return new Settings(config.subMap(path, true, path + Character.MAX_VALUE, false), path, parsed);
     }
 
     public String stringOption(String key, String fallback) {
@@ -85,18 +85,107 @@ public final class Settings {
     }
 
     public boolean booleanOption(String key, boolean fallback) {
-        Optional<?> value = getObject(key);
+        return this.<Boolean>typedOption("boolean", key, Boolean::parseBoolean).orElse(fallback);
+    }
+
+    public int intOption(String key, int fallback) {
+        return this.<Integer>typedOption("int", key, Integer::parseInt).orElse(fallback);
+    }
 
-        return value.map(Object::toString)
-            .map(Boolean::parseBoolean)
-            .orElse(fallback);
+    public long longOption(String key, long fallback) {
+        return this.<Long>typedOption("long", key, Long::parseLong).orElse(fallback);
+    }
+
+    public double doubleOption(String key, double fallback) {
+        return this.<Double>typedOption("double", key, Double::parseDouble).orElse(fallback);
+    }
+
+    /**
+     * Reads a duration in milliseconds; the value is either a plain number of milliseconds or a
+     * number followed by one of the units 'ms', 's', 'm', 'h' or 'd', e.g. '30s'.
+     */
+    public long durationOption(String key, long fallback) {
+        return this.<Long>typedOption("duration", key, Settings::parseDuration).orElse(fallback);
+    }
+
+    /**
+     * Reads a size; the value is either a plain number or a number followed by one of the binary
+     * multipliers 'k', 'm' or 'g', e.g. '64k'.
+     */
+    public long sizeOption(String key, long fallback) {
+        return this.<Long>typedOption("size", key, Settings::parseSize).orElse(fallback);
+    }
+
+    /**
+     * @return the trimmed, non empty elements of a comma separated option; empty if the option is not set
+     */
+    public List<String> listOption(String key) {
+        return this.<List<String>>typedOption("list", key, Settings::parseList).orElse(Collections.emptyList());
     }
 
     private Optional<?> getObject(String key) {
-        String keyPrefix = prefix.isEmpty() ? "" : prefix + ".";
-        return config.entrySet().stream().filter(predicate.and(keyPredicate(keyPrefix + key)))
-            .map(Map.Entry::getValue)
-            .findFirst();
+        return Optional.ofNullable(config.get(prefix + key));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Optional<T> typedOption(String type, String key, Function<String, T> parser) {
+        String path = prefix + key;
+        Object value = config.get(path);
+        if (value == null) {
+            return Optional.empty();
+        }
+        return (Optional<T>) parsed.computeIfAbsent(type + ":" + path, k -> {
+            try {
+                return Optional.of(parser.apply(value.toString().trim()));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid " + type + " value '" + value + "' of option " + path, e);
+            }
+        });
+    }
+
+    private static NavigableMap<String, Object> index(Map<String, ?> config) {
+        NavigableMap<String, Object> index = new TreeMap<>();
+        config.forEach((key, value) -> {
+            if (key != null && value != null) {
+                index.put(key, value);
+            }
+        });
+        return Collections.unmodifiableNavigableMap(index);
+    }
+
+    static long parseDuration(String value) {
+        String lower = value.toLowerCase(Locale.ROOT);
+        if (lower.endsWith("ms")) {
+            return Long.parseLong(lower.substring(0, lower.length() - 2).trim());
+        }
+        TimeUnit unit;
+        switch (lower.isEmpty() ? ' ' : lower.charAt(lower.length() - 1)) {
+            case 's': unit = TimeUnit.SECONDS; break;
+            case 'm': unit = TimeUnit.MINUTES; break;
+            case 'h': unit = TimeUnit.HOURS; break;
+            case 'd': unit = TimeUnit.DAYS; break;
+            default: return Long.parseLong(lower);
+        }
+        return unit.toMillis(Long.parseLong(lower.substring(0, lower.length() - 1).trim()));
+    }
+
+    static long parseSize(String value) {
+        String lower = value.toLowerCase(Locale.ROOT);
+        int shift;
+        switch (lower.isEmpty() ? ' ' : lower.charAt(lower.length() - 1)) {
+            case 'k': shift = 10; break;
+            case 'm': shift = 20; break;
+            case 'g': shift = 30; break;
+            default: return Long.parseLong(lower);
+        }
+        return Long.parseLong(lower.substring(0, lower.length() - 1).trim()) << shift;
+    }
+
+    static List<String> parseList(String value) {
+        return Collections.unmodifiableList(Arrays.stream(value.split(","))
+            .map(String::trim)
+            .filter(element -> !element.isEmpty())
+            .collect(Collectors.toList()));
     }
 
 
@@ -107,7 +196,9 @@ public final class Settings {
     }
 
     public static Properties loadProperties(Path path) throws IOException {
-        return loadProperties(Files.newBufferedReader(path));
+        try (Reader reader = Files.newBufferedReader(path)) {
+            return loadProperties(reader);
+        }
     }
 
     public static Properties loadProperties(Reader reader) throws IOException {
@@ -15,17 +15,27 @@
  */
 package org.apifocal.activemix.commons;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
 
 /**
  * Settings utility for reading LoginModule configuration properties in more handy way.
@@ -34,6 +44,25 @@ public final class SettingsBuilder {
 
 	private static final Logger LOG = LoggerFactory.getLogger(SettingsBuilder.class);
 
+    private static final Object NOT_FOUND = new Object();
+
+    // classes resolved per class loader; loaders are held weakly and so are the classes, which refer to their loader
+    private static final LoadingCache<ClassLoader, ConcurrentMap<String, Object>> CLASSES = CacheBuilder.newBuilder()
+        .weakKeys()
+        .build(new CacheLoader<ClassLoader, ConcurrentMap<String, Object>>() {
+            @Override
+            public ConcurrentMap<String, Object> load(ClassLoader classLoader) {
+                return new ConcurrentHashMap<>();
+            }
+        });
+
+    private static final ClassValue<Factory> FACTORIES = new ClassValue<Factory>() {
+        @Override
+        protected Factory computeValue(Class<?> type) {
+            return Factory.of(type);
+        }
+    };
+
 
     public static <T> List<T> createObjects(
     		final ClassLoader cl, final Settings settings, 
@@ -51,17 +80,20 @@ public final class SettingsBuilder {
     	if (typeClass == null) {
             return null;
     	}
+        Factory factory = FACTORIES.get(typeClass);
+        if (factory.failure instanceof NoSuchMethodException) {
+            throw new IllegalStateException("Could not find a constructor with Settings argument in type " + typeClass.getName(), factory.failure);
+        } else if (factory.failure instanceof InstantiationException) {
+            throw new IllegalStateException("Could not instantiate type " + typeClass.getName(), factory.failure);
+        } else if (factory.failure != null) {
+            throw new IllegalStateException("Could not access a constructor with Settings argument in type " + typeClass.getName(), factory.failure);
+        }
         try {
-            Constructor<T> constructor = typeClass.getConstructor(Settings.class);
-            return constructor.newInstance(settings);
-        } catch (NoSuchMethodException e) {
-            throw new IllegalStateException("Could not find a constructor with Settings argument in type " + typeClass.getName(), e);
-        } catch (InstantiationException e) {
-            throw new IllegalStateException("Could not instantiate type " + typeClass.getName(), e);
-        } catch (IllegalAccessException e) {
-            throw new IllegalStateException("Could not access a constructor with Settings argument in type " + typeClass.getName(), e);
-        } catch (InvocationTargetException e) {
-            throw new IllegalStateException("Could not initialize instance of type " + typeClass.getName(), e.getTargetException());
+            return typeClass.cast(factory.constructor.invokeExact(settings));
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Could not initialize instance of type " + typeClass.getName(), e);
         }
     }
 
@@ -78,25 +110,71 @@ public final class SettingsBuilder {
     }
 
     public static <T> Optional<Class<T>> loadClass(ClassLoader classLoader, Class<T> baseType, String clazz) {
+        ConcurrentMap<String, Object> classes = CLASSES.getUnchecked(classLoader);
+        Object known = classes.get(clazz);
+        Class<?> aClass = known instanceof WeakReference ? (Class<?>) ((WeakReference<?>) known).get() : null;
+        if (aClass == null && known != NOT_FOUND) {
+            aClass = findClass(classLoader, clazz);
+            // names which failed once aren't looked up again, a typo must not cost a class path scan per login
+            classes.put(clazz, aClass != null ? new WeakReference<Class<?>>(aClass) : NOT_FOUND);
+        }
+        if (aClass != null && baseType.isAssignableFrom(aClass)) {
+            return Optional.of(aClass.asSubclass(baseType));
+        }
+        return Optional.empty();
+    }
+
+    private static Class<?> findClass(ClassLoader classLoader, String clazz) {
         ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
         try {
             Thread.currentThread().setContextClassLoader(new CompositeClassLoader(contextClassLoader, classLoader));
-            Class<?> aClass = classLoader.loadClass(clazz);
-            if (baseType.isAssignableFrom(aClass)) {
-                return Optional.of(aClass.asSubclass(baseType));
-            }
-        } catch (ClassNotFoundException e) {
+            return classLoader.loadClass(clazz);
+        } catch (ClassNotFoundException | LinkageError e) {
             LOG.info("Failed to find type {}", clazz);
+            return null;
         } finally {
             Thread.currentThread().setContextClassLoader(contextClassLoader);
         }
-        return Optional.empty();
+    }
+
+    /**
+     * Forgets all resolved classes, including the names which could not be found.
+     */
+    public static void clear() {
+        CLASSES.invalidateAll();
     }
 
     public static Supplier<? extends RuntimeException> requiredPropertyMissing(String optionName) {
         return () -> new IllegalStateException("Option " + optionName + " must be specified");
     }
 
+    /**
+     * The {@code (Settings)} constructor of a type, or the reason why it cannot be used.
+     */
+    private static final class Factory {
+        private static final MethodType TYPE = MethodType.methodType(Object.class, Settings.class);
+
+        private final MethodHandle constructor;
+        private final ReflectiveOperationException failure;
+
+        private Factory(MethodHandle constructor, ReflectiveOperationException failure) {
+            this.constructor = constructor;
+            this.failure = failure;
+        }
+
+        static Factory of(Class<?> type) {
+            try {
+                if (Modifier.isAbstract(type.getModifiers())) {
+                    throw new InstantiationException(type.getName());
+                }
+                Constructor<?> constructor = type.getConstructor(Settings.class);
+                return new Factory(MethodHandles.publicLookup().unreflectConstructor(constructor).asType(TYPE), null);
+            } catch (ReflectiveOperationException e) {
+                return new Factory(null, e);
+            }
+        }
+    }
+
     public static class CompositeClassLoader extends ClassLoader {
         private final Logger logger = LoggerFactory.getLogger(CompositeClassLoader.class);
         private final ClassLoader[] classLoaders;
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileWatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final BlockingQueue<Path> changes = new LinkedBlockingQueue<>();
+    private FileWatcher watcher;
+
+    @After
+    public void tearDown() {
+        if (watcher != null) {
+            watcher.close();
+        }
+    }
+
+    @Test
+    public void testReportsChanges() throws Exception {
+        File existing = write(folder.newFile("a.keys"), "one");
+        watch(50L);
+
+        File created = write(new File(folder.getRoot(), "b.keys"), "two");
+        awaitChange(created);
+
+        write(existing, "changed");
+        awaitChange(existing);
+
+        assertTrue(created.delete());
+        awaitChange(created);
+    }
+
+    @Test
+    public void testFilter() throws Exception {
+        watch(50L);
+
+        write(new File(folder.getRoot(), "ignored.txt"), "text");
+        File keys = write(new File(folder.getRoot(), "c.keys"), "three");
+        awaitChange(keys);
+        // a write may be seen more than once, but never the filtered file
+        Thread.sleep(200);
+        changes.forEach(changed -> assertEquals(keys.toPath().toAbsolutePath(), changed));
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        watch(50L);
+        assertTrue(watcher.isRunning());
+
+        watcher.close();
+        assertFalse(watcher.isRunning());
+        write(new File(folder.getRoot(), "d.keys"), "four");
+        assertNull(changes.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    private void watch(long pollInterval) {
+        watcher = new FileWatcher(folder.getRoot().toPath(), file -> file.getFileName().toString().endsWith(".keys"),
+            changes::add, pollInterval);
+        watcher.start();
+    }
+
+    private void awaitChange(File file) throws InterruptedException {
+        Path expected = file.toPath().toAbsolutePath();
+        long deadline = System.currentTimeMillis() + 5000L;
+        Path changed;
+        do {
+            changed = changes.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        } while (changed != null && !changed.equals(expected));
+        assertEquals(expected, changed);
+    }
+
+    private static File write(File file, String content) throws Exception {
+        Files.write(file.toPath(), Arrays.asList(content), StandardCharsets.UTF_8);
+        return file;
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SettingsBuilderTest {
+
+    private final ClassLoader classLoader = SettingsBuilderTest.class.getClassLoader();
+    private final Settings settings = new Settings(Collections.singletonMap("things.Thing.name", "first"));
+
+    @Test
+    public void testCreateObjects() {
+        List<Thing> things = SettingsBuilder.createObjects(classLoader, settings, getClass().getPackage().getName(),
+            "SettingsBuilderTest$Thing, SettingsBuilderTest$Missing, SettingsBuilderTest$Thing", Thing.class, "things");
+
+        assertEquals(2, things.size());
+        assertNotSame(things.get(0), things.get(1));
+        assertEquals("first", things.get(0).name);
+    }
+
+    @Test
+    public void testLoadClassCached() {
+        String name = Thing.class.getName();
+        assertSame(Thing.class, SettingsBuilder.loadClass(classLoader, Thing.class, name).get());
+        assertSame(Thing.class, SettingsBuilder.loadClass(classLoader, Thing.class, name).get());
+        assertFalse(SettingsBuilder.loadClass(classLoader, String.class, name).isPresent());
+    }
+
+    @Test
+    public void testMissingClass() {
+        String name = getClass().getName() + "$Missing";
+        assertFalse(SettingsBuilder.loadClass(classLoader, Object.class, name).isPresent());
+        assertFalse(SettingsBuilder.loadClass(classLoader, Object.class, name).isPresent());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNoSettingsConstructor() {
+        SettingsBuilder.create(NoSettings.class, settings);
+    }
+
+    @Test
+    public void testFailingConstructor() {
+        try {
+            SettingsBuilder.create(Failing.class, settings);
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof UnsupportedOperationException);
+            return;
+        }
+        fail("Expected constructor failure");
+    }
+
+    public static class Thing {
+        final String name;
+
+        public Thing(Settings settings) {
+            this.name = settings.stringOption("name", null);
+        }
+    }
+
+    public static class NoSettings {
+    }
+
+    public static class Failing {
+        public Failing(Settings settings) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SettingsTest {
+
+    @Test
+    public void testExactSegments() {
+        Map<String, String> options = new HashMap<>();
+        options.put("cache", "true");
+        options.put("cacheSize", "10");
+        options.put("caches.size", "20");
+        options.put("cache.size", "30");
+        Settings settings = new Settings(options);
+
+        assertEquals(Optional.of("true"), settings.stringOption("cache"));
+        assertEquals(Optional.empty(), settings.stringOption("cach"));
+        assertEquals(30, settings.subset("cache").intOption("size", 0));
+        assertEquals(0, settings.subset("cach").intOption("size", 0));
+        assertEquals(Optional.empty(), settings.subset("cache").stringOption("Size"));
+    }
+
+    @Test
+    public void testNestedSubset() {
+        Map<String, String> options = new HashMap<>();
+        options.put("verifiers.TokenSignerValidator.keys", "/keys");
+        options.put("verifiers.TokenSignerValidatorX.keys", "/other");
+        Settings settings = new Settings(options);
+
+        assertEquals("/keys", settings.subset("verifiers", "TokenSignerValidator").stringOption("keys", null));
+        assertEquals("/keys", settings.subset("verifiers").subset("TokenSignerValidator").stringOption("keys", null));
+        assertEquals(Optional.empty(), settings.subset("verifiers").stringOption("keys"));
+    }
+
+    @Test
+    public void testTypedOptions() {
+        Map<String, Object> options = new HashMap<>();
+        options.put("flag", "true");
+        options.put("count", " 42 ");
+        options.put("rate", "2.5");
+        options.put("list", "a, b,,c ");
+        options.put("number", 7L);
+        Settings settings = new Settings(options);
+
+        assertTrue(settings.booleanOption("flag"));
+        assertFalse(settings.booleanOption("missing"));
+        assertTrue(settings.booleanOption("missing", true));
+        assertEquals(42, settings.intOption("count", 0));
+        assertEquals(42L, settings.longOption("count", 0L));
+        assertEquals(7L, settings.longOption("number", 0L));
+        assertEquals(2.5, settings.doubleOption("rate", 0.0), 0.0);
+        assertEquals(Arrays.asList("a", "b", "c"), settings.listOption("list"));
+        assertEquals(Collections.emptyList(), settings.listOption("missing"));
+        // parsed once
+        assertSame(settings.listOption("list"), settings.listOption("list"));
+    }
+
+    @Test
+    public void testDurations() {
+        assertEquals(1500L, Settings.parseDuration("1500"));
+        assertEquals(250L, Settings.parseDuration("250ms"));
+        assertEquals(TimeUnit.SECONDS.toMillis(30), Settings.parseDuration("30s"));
+        assertEquals(TimeUnit.MINUTES.toMillis(5), Settings.parseDuration("5m"));
+        assertEquals(TimeUnit.HOURS.toMillis(2), Settings.parseDuration("2H"));
+        assertEquals(TimeUnit.DAYS.toMillis(1), Settings.parseDuration("1d"));
+    }
+
+    @Test
+    public void testSizes() {
+        assertEquals(1000L, Settings.parseSize("1000"));
+        assertEquals(64L * 1024, Settings.parseSize("64k"));
+        assertEquals(2L * 1024 * 1024, Settings.parseSize("2M"));
+        assertEquals(1L << 30, Settings.parseSize("1g"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidValue() {
+        new Settings(Collections.singletonMap("timeout", "soon")).durationOption("timeout", 0L);
+    }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.apifocal.activemix.jaas.commons.Keys;
+import org.apifocal.activemix.jaas.commons.Tokens;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.bc.BouncyCastleProviderSingleton;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+/**
+ * Generated keys of a benchmark issuer, written as an authorized keys file to a scratch directory.
+ *
+ * Tokens are signed with the last key of the file, so that selecting keys without a key ID has to
+ * go through all of them.
+ */
+final class BenchmarkKeys {
+
+    static final String ISSUER = "bench";
+    static final String USER = "alice";
+
+    private final File directory;
+    private final File keysFile;
+    private final List<KeyPair> keyPairs = new ArrayList<>();
+    private final List<String> lines = new ArrayList<>();
+
+    /**
+     * @param keyType one of 'RSA-&lt;bits&gt;', 'EC-&lt;bits&gt;' or 'Ed25519'
+     */
+    BenchmarkKeys(String keyType, int keysPerIssuer) throws IOException, GeneralSecurityException {
+        KeyPairGenerator generator = generator(keyType);
+        for (int i = 0; i < keysPerIssuer; i++) {
+            KeyPair keyPair = generator.generateKeyPair();
+            keyPairs.add(keyPair);
+            lines.add(encode(keyPair.getPublic(), "key" + i + "@" + ISSUER));
+        }
+
+        directory = Files.createTempDirectory("activemix-bench").toFile();
+        keysFile = new File(directory, ISSUER + ".keys");
+        Files.write(keysFile.toPath(), lines, StandardCharsets.US_ASCII);
+    }
+
+    File getDirectory() {
+        return directory;
+    }
+
+    File getKeysFile() {
+        return keysFile;
+    }
+
+    /**
+     * @return the authorized keys line of the signing key
+     */
+    String signerLine() {
+        return lines.get(lines.size() - 1);
+    }
+
+    /**
+     * Creates a token of the benchmark user and issuer, padded with the given number of extra claims.
+     */
+    String token(int claims, boolean withKeyId) throws GeneralSecurityException, JOSEException {
+        KeyPair signer = keyPairs.get(keyPairs.size() - 1);
+        JWTClaimsSet.Builder builder = new JWTClaimsSet.Builder()
+            .subject(USER)
+            .issuer(ISSUER);
+        for (int i = 0; i < claims; i++) {
+            builder.claim("claim" + i, "value-of-claim-" + i);
+        }
+
+        JWSHeader.Builder header = new JWSHeader.Builder(Tokens.algorithm(signer.getPublic()));
+        if (withKeyId) {
+            header.keyID(Keys.fingerprint(signer.getPublic(), Keys.defaultAlgorithm()));
+        }
+        SignedJWT token = new SignedJWT(header.build(), builder.build());
+        token.sign(Tokens.signer(signer));
+        return token.serialize();
+    }
+
+    void delete() throws IOException {
+        try (Stream<File> files = Files.walk(directory.toPath()).map(path -> path.toFile())) {
+            files.sorted(Comparator.reverseOrder()).forEach(File::delete);
+        }
+    }
+
+    private static KeyPairGenerator generator(String keyType) throws GeneralSecurityException {
+        if (Keys.ED25519.equals(keyType)) {
+            return KeyPairGenerator.getInstance(Keys.ED25519, BouncyCastleProviderSingleton.getInstance());
+        }
+        String[] parts = keyType.split("-");
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(parts[0]);
+        generator.initialize(Integer.parseInt(parts[1]));
+        return generator;
+    }
+
+    // see: https://tools.ietf.org/html/rfc4253#section-6.6, https://tools.ietf.org/html/rfc5656#section-3.1
+    //  and https://tools.ietf.org/html/rfc8709#section-4
+    private static String encode(PublicKey key, String comment) throws IOException {
+        String type;
+        ByteArrayOutputStream blob = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(blob)) {
+            if (key instanceof RSAPublicKey) {
+                type = "ssh-rsa";
+                writeBytes(out, type.getBytes(StandardCharsets.US_ASCII));
+                writeBytes(out, ((RSAPublicKey) key).getPublicExponent().toByteArray());
+                writeBytes(out, ((RSAPublicKey) key).getModulus().toByteArray());
+            } else if (key instanceof ECPublicKey) {
+                ECPublicKey ecKey = (ECPublicKey) key;
+                int size = (ecKey.getParams().getCurve().getField().getFieldSize() + 7) / 8;
+                String curve = "nistp" + ecKey.getParams().getCurve().getField().getFieldSize();
+                type = "ecdsa-sha2-" + curve;
+                writeBytes(out, type.getBytes(StandardCharsets.US_ASCII));
+                writeBytes(out, curve.getBytes(StandardCharsets.US_ASCII));
+                byte[] point = new byte[2 * size + 1];
+                point[0] = 4;
+                unsigned(ecKey.getW().getAffineX(), point, 1, size);
+                unsigned(ecKey.getW().getAffineY(), point, 1 + size, size);
+                writeBytes(out, point);
+            } else {
+                type = "ssh-ed25519";
+                writeBytes(out, type.getBytes(StandardCharsets.US_ASCII));
+                writeBytes(out, Keys.rawEd25519Key(key));
+            }
+        }
+        return type + " " + Base64.getEncoder().encodeToString(blob.toByteArray()) + " " + comment;
+    }
+
+    private static void unsigned(BigInteger value, byte[] target, int offset, int size) {
+        byte[] bytes = value.toByteArray();
+        int length = Math.min(bytes.length, size);
+        System.arraycopy(bytes, bytes.length - length, target, offset + size - length, length);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+}
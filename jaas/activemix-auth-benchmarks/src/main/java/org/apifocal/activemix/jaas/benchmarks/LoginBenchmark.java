@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.security.auth.Subject;
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.NameCallback;
+import javax.security.auth.callback.PasswordCallback;
+import javax.security.auth.callback.UnsupportedCallbackException;
+import javax.security.auth.login.LoginException;
+
+import org.apifocal.activemix.jaas.token.TokenLoginModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A complete token login, as the broker runs it for every connection: a fresh
+ * {@link TokenLoginModule} is initialized, then logs in and commits.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoginBenchmark {
+
+    @Param({ "RSA-2048", "RSA-4096", "EC-256", "Ed25519" })
+    public String keyType;
+
+    @Param({ "1", "10", "100" })
+    public int keysPerIssuer;
+
+    @Param({ "1", "20" })
+    public int claims;
+
+    @Param({ "false", "true" })
+    public boolean cache;
+
+    private BenchmarkKeys keys;
+    private Map<String, String> options;
+    private CallbackHandler callbackHandler;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        keys = new BenchmarkKeys(keyType, keysPerIssuer);
+        String token = keys.token(claims, true);
+
+        options = new HashMap<>();
+        options.put(TokenLoginModule.VERIFIERS_PACKAGE, "org.apifocal.activemix.jaas.commons.verifiers");
+        options.put(TokenLoginModule.VERIFIERS_CLASSES, "TokenSignatureValidator,TokenSignerValidator");
+        options.put("verifiers.TokenSignerValidator.keys", keys.getDirectory().getAbsolutePath());
+        options.put("verifiers.TokenSignerValidator.watch", "false");
+        options.put(TokenLoginModule.CLAIM_MAPPERS_PACKAGE, "org.apifocal.activemix.jaas.commons.mappers");
+        options.put(TokenLoginModule.CLAIM_MAPPERS_CLASSES, "SubjectMapper,IssuerMapper");
+        options.put(TokenLoginModule.CACHE_ENABLED, Boolean.toString(cache));
+        callbackHandler = new TokenCallbackHandler(BenchmarkKeys.USER, token);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        keys.delete();
+    }
+
+    @Benchmark
+    public Subject login() throws LoginException {
+        Subject subject = new Subject();
+        TokenLoginModule module = new TokenLoginModule();
+        module.initialize(subject, callbackHandler, new HashMap<>(), options);
+        module.login();
+        module.commit();
+        return subject;
+    }
+
+    private static class TokenCallbackHandler implements CallbackHandler {
+
+        private final String user;
+        private final String token;
+
+        TokenCallbackHandler(String user, String token) {
+            this.user = user;
+            this.token = token;
+        }
+
+        @Override
+        public void handle(Callback[] callbacks) throws UnsupportedCallbackException {
+            for (Callback callback : callbacks) {
+                if (callback instanceof NameCallback) {
+                    ((NameCallback) callback).setName(user);
+                } else if (callback instanceof PasswordCallback) {
+                    ((PasswordCallback) callback).setPassword(token.toCharArray());
+                } else {
+                    throw new UnsupportedCallbackException(callback);
+                }
+            }
+        }
+    }
+
+}
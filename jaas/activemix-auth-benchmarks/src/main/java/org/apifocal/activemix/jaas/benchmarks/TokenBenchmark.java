@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.benchmarks;
+
+import java.security.PublicKey;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apifocal.activemix.commons.Settings;
+import org.apifocal.activemix.jaas.commons.SshKeyCodec;
+import org.apifocal.activemix.jaas.commons.TokenValidationException;
+import org.apifocal.activemix.jaas.commons.verifiers.AuthorizedKeys;
+import org.apifocal.activemix.jaas.commons.verifiers.TokenSecurityContext;
+import org.apifocal.activemix.jaas.commons.verifiers.TokenSignerValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nimbusds.jwt.SignedJWT;
+
+/**
+ * The individual steps of a token login: parsing the token, parsing and loading authorized keys and
+ * verifying the signature.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenBenchmark {
+
+    @Param({ "RSA-2048", "RSA-4096", "EC-256", "Ed25519" })
+    public String keyType;
+
+    @Param({ "1", "10", "100" })
+    public int keysPerIssuer;
+
+    @Param({ "1", "20" })
+    public int claims;
+
+    private BenchmarkKeys keys;
+    private String token;
+    private SignedJWT parsed;
+    private String signerLine;
+    private TokenSignerValidator validator;
+    private TokenSecurityContext context;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        keys = new BenchmarkKeys(keyType, keysPerIssuer);
+        token = keys.token(claims, true);
+        parsed = SignedJWT.parse(token);
+        signerLine = keys.signerLine();
+
+        Map<String, String> options = new HashMap<>();
+        options.put("keys", keys.getDirectory().getAbsolutePath());
+        options.put("watch", "false");
+        validator = new TokenSignerValidator(new Settings(options));
+        context = new TokenSecurityContext(BenchmarkKeys.ISSUER);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        keys.delete();
+    }
+
+    @Benchmark
+    public SignedJWT parseToken() throws ParseException {
+        return SignedJWT.parse(token);
+    }
+
+    @Benchmark
+    public PublicKey parseKey() {
+        return SshKeyCodec.parse(signerLine);
+    }
+
+    @Benchmark
+    public AuthorizedKeys loadKeys() throws Exception {
+        return AuthorizedKeys.load(keys.getKeysFile());
+    }
+
+    @Benchmark
+    public SignedJWT validateSigner() throws TokenValidationException {
+        validator.validate(parsed, context);
+        return parsed;
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.broker;
+
+import java.util.Map;
+
+import org.apache.activemq.broker.Broker;
+import org.apache.activemq.broker.BrokerFilter;
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.broker.ProducerBrokerExchange;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.broker.region.Subscription;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ConnectionId;
+import org.apache.activemq.command.ConnectionInfo;
+import org.apache.activemq.command.ConsumerInfo;
+import org.apache.activemq.command.Message;
+import org.apache.activemq.command.ProducerInfo;
+import org.apache.activemq.security.SecurityContext;
+
+/**
+ * Broker filter checking consumers, producers, messages and destination changes, like the ActiveMQ
+ * authorization broker does. Subclasses decide through {@link #check(ConnectionContext, ActiveMQDestination, Operation, String)},
+ * which is only called for authenticated, non-broker connections and actual destinations.
+ */
+public abstract class AbstractAuthorizationBroker extends BrokerFilter {
+
+    protected AbstractAuthorizationBroker(Broker next) {
+        super(next);
+    }
+
+    /**
+     * Checks whether the connection may perform the operation on the destination.
+     *
+     * @param action the operation as told to the user, e.g. 'read from'
+     * @throws SecurityException if the operation is not allowed
+     */
+    protected abstract void check(ConnectionContext context, ActiveMQDestination destination, Operation operation, String action);
+
+    /**
+     * Called once a connection was removed, to release whatever was kept for it.
+     */
+    protected void connectionRemoved(ConnectionId connectionId) {
+    }
+
+    @Override
+    public void removeConnection(ConnectionContext context, ConnectionInfo info, Throwable error) throws Exception {
+        try {
+            super.removeConnection(context, info, error);
+        } finally {
+            connectionRemoved(info.getConnectionId());
+        }
+    }
+
+    @Override
+    public Subscription addConsumer(ConnectionContext context, ConsumerInfo info) throws Exception {
+        authorize(context, info.getDestination(), Operation.READ, "read from");
+        return super.addConsumer(context, info);
+    }
+
+    @Override
+    public void addProducer(ConnectionContext context, ProducerInfo info) throws Exception {
+        // anonymous producers are checked message by message
+        authorize(context, info.getDestination(), Operation.WRITE, "write to");
+        super.addProducer(context, info);
+    }
+
+    @Override
+    public void send(ProducerBrokerExchange producerExchange, Message messageSend) throws Exception {
+        authorize(producerExchange.getConnectionContext(), messageSend.getDestination(), Operation.WRITE, "write to");
+        super.send(producerExchange, messageSend);
+    }
+
+    @Override
+    public Destination addDestination(ConnectionContext context, ActiveMQDestination destination, boolean createIfTemporary) throws Exception {
+        Map<ActiveMQDestination, Destination> existing = getDestinationMap(destination);
+        if (existing == null || !existing.containsKey(destination)) {
+            authorize(context, destination, Operation.ADMIN, "create");
+        }
+        return super.addDestination(context, destination, createIfTemporary);
+    }
+
+    @Override
+    public void removeDestination(ConnectionContext context, ActiveMQDestination destination, long timeout) throws Exception {
+        authorize(context, destination, Operation.ADMIN, "remove");
+        super.removeDestination(context, destination, timeout);
+    }
+
+    private void authorize(ConnectionContext context, ActiveMQDestination destination, Operation operation, String action) {
+        SecurityContext securityContext = context.getSecurityContext();
+        if (securityContext == null) {
+            throw new SecurityException("User is not authenticated.");
+        }
+        if (securityContext.isBrokerContext() || destination == null) {
+            return;
+        }
+        check(context, destination, operation, action);
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.broker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.activemq.filter.DestinationFilter;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Access privileges of a token, compiled from its 'acl' claim.
+ *
+ * The claim is a list of {@code perm[:pattern]} entries separated by commas or spaces. Permissions
+ * are any of 'r' (consume), 'w' (send) and 'a' (create and remove destinations). Patterns use the
+ * ActiveMQ wildcard syntax and apply to queues and topics alike, unless qualified with 'queue://' or
+ * 'topic://'; without pattern an entry applies to all destinations. E.g. {@code rw:orders.>,r:prices.*}.
+ *
+ * The permissions granted on a destination are computed once and kept as a bit mask, so checking a
+ * message is a map lookup and a bit test.
+ */
+public final class Acl {
+
+    public static final int READ = 1;
+    public static final int WRITE = 2;
+    public static final int ADMIN = 4;
+
+    public static final long DEFAULT_CACHE_SIZE = 1024L;
+    public static final Acl NONE = parse("");
+
+    private final String text;
+    private final List<Rule> rules;
+    private final Cache<ActiveMQDestination, Integer> masks;
+
+    private Acl(String text, List<Rule> rules, long cacheSize) {
+        this.text = text;
+        this.rules = rules;
+        this.masks = CacheBuilder.newBuilder().maximumSize(cacheSize).build();
+    }
+
+    public static Acl parse(String text) {
+        return parse(text, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the text is not a valid acl
+     */
+    public static Acl parse(String text, long cacheSize) {
+        List<Rule> rules = new ArrayList<>();
+        for (String entry : text.trim().split("[,\\s]+")) {
+            if (entry.isEmpty()) {
+                continue;
+            }
+            int separator = entry.indexOf(':');
+            int mask = permissions(separator < 0 ? entry : entry.substring(0, separator), text);
+            String pattern = separator < 0 ? ">" : entry.substring(separator + 1);
+            if (pattern.isEmpty()) {
+                throw new IllegalArgumentException("Missing destination pattern in acl '" + text + "'");
+            }
+
+            if (pattern.startsWith(ActiveMQDestination.QUEUE_QUALIFIED_PREFIX) || pattern.startsWith(ActiveMQDestination.TOPIC_QUALIFIED_PREFIX)) {
+                rules.add(new Rule(mask, ActiveMQDestination.createDestination(pattern, ActiveMQDestination.QUEUE_TYPE)));
+            } else {
+                rules.add(new Rule(mask, new ActiveMQQueue(pattern)));
+                rules.add(new Rule(mask, new ActiveMQTopic(pattern)));
+            }
+        }
+        return new Acl(text, Collections.unmodifiableList(rules), cacheSize);
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return true if all the given permissions are granted on the destination
+     */
+    public boolean allows(ActiveMQDestination destination, int permissions) {
+        return (mask(destination) & permissions) == permissions;
+    }
+
+    /**
+     * @return the permissions granted on the destination; on a composite destination, the ones granted on all its parts
+     */
+    public int mask(ActiveMQDestination destination) {
+        Integer mask = masks.getIfPresent(destination);
+        if (mask == null) {
+            mask = compute(destination);
+            masks.put(destination, mask);
+        }
+        return mask;
+    }
+
+    private int compute(ActiveMQDestination destination) {
+        if (destination.isComposite()) {
+            int mask = READ | WRITE | ADMIN;
+            for (ActiveMQDestination part : destination.getCompositeDestinations()) {
+                mask &= compute(part);
+            }
+            return mask;
+        }
+        int mask = 0;
+        for (Rule rule : rules) {
+            if (rule.filter.matches(destination)) {
+                mask |= rule.mask;
+            }
+        }
+        return mask;
+    }
+
+    private static int permissions(String permissions, String text) {
+        int mask = 0;
+        for (char permission : permissions.toCharArray()) {
+            switch (permission) {
+                case 'r': mask |= READ; break;
+                case 'w': mask |= WRITE; break;
+                case 'a': mask |= ADMIN; break;
+                default: throw new IllegalArgumentException("Invalid permission '" + permission + "' in acl '" + text + "'");
+            }
+        }
+        return mask;
+    }
+
+    @Override
+    public String toString() {
+        return "Acl(" + text + ")";
+    }
+
+    private static final class Rule {
+        private final int mask;
+        private final DestinationFilter filter;
+
+        Rule(int mask, ActiveMQDestination pattern) {
+            this.mask = mask;
+            this.filter = DestinationFilter.parseFilter(pattern);
+        }
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.broker;
+
+import java.security.Principal;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.activemq.broker.Broker;
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ConnectionId;
+import org.apache.activemq.security.SecurityContext;
+import org.apifocal.activemix.jaas.commons.AclPrincipal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+/**
+ * Broker filter checking consumers, producers, messages and destination changes against the
+ * {@link Acl} of the connection.
+ *
+ * The acl of a connection is resolved from its {@link AclPrincipal} on first use and kept until the
+ * connection is removed; connections with the same acl share the compiled acl. Temporary
+ * destinations are always allowed. Advisory topics are checked like any other topic, so clients
+ * watching advisories need read access to {@code topic://ActiveMQ.Advisory.>}.
+ */
+public class AclAuthorizationBroker extends AbstractAuthorizationBroker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AclAuthorizationBroker.class);
+
+    private final Acl defaultAcl;
+    private final LoadingCache<String, Acl> acls;
+    private final ConcurrentMap<ConnectionId, Acl> connections = new ConcurrentHashMap<>();
+
+    public AclAuthorizationBroker(Broker next, String defaultAcl, long cacheSize) {
+        super(next);
+        this.defaultAcl = Acl.parse(defaultAcl, cacheSize);
+        this.acls = CacheBuilder.newBuilder()
+            .maximumSize(cacheSize)
+            .build(new CacheLoader<String, Acl>() {
+                @Override
+                public Acl load(String text) {
+                    return Acl.parse(text, cacheSize);
+                }
+            });
+    }
+
+    @Override
+    protected void connectionRemoved(ConnectionId connectionId) {
+        connections.remove(connectionId);
+    }
+
+    @Override
+    protected void check(ConnectionContext context, ActiveMQDestination destination, Operation operation, String action) {
+        if (destination.isTemporary()) {
+            return;
+        }
+        SecurityContext securityContext = context.getSecurityContext();
+        if (!acl(context, securityContext).allows(destination, permission(operation))) {
+            throw new SecurityException("User " + securityContext.getUserName() + " is not authorized to " + action + ": " + destination);
+        }
+    }
+
+    private Acl acl(ConnectionContext context, SecurityContext securityContext) {
+        ConnectionId connectionId = context.getConnectionId();
+        Acl acl = connectionId != null ? connections.get(connectionId) : null;
+        if (acl == null) {
+            acl = resolve(securityContext);
+            if (connectionId != null) {
+                connections.put(connectionId, acl);
+            }
+        }
+        return acl;
+    }
+
+    private Acl resolve(SecurityContext securityContext) {
+        // acls of several logins are combined, in a stable order so they compile only once
+        TreeSet<String> texts = new TreeSet<>();
+        for (Principal principal : securityContext.getPrincipals()) {
+            if (principal instanceof AclPrincipal && principal.getName() != null) {
+                texts.add(principal.getName());
+            }
+        }
+        if (texts.isEmpty()) {
+            return defaultAcl;
+        }
+        String text = String.join(",", texts);
+        try {
+            return acls.getUnchecked(text);
+        } catch (RuntimeException e) {
+            LOG.warn("Invalid acl '{}' of user {}, denying access: {}", text, securityContext.getUserName(), e.getMessage());
+            return Acl.NONE;
+        }
+    }
+
+    private static int permission(Operation operation) {
+        switch (operation) {
+            case READ:
+                return Acl.READ;
+            case WRITE:
+                return Acl.WRITE;
+            default:
+                return Acl.ADMIN;
+        }
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.broker;
+
+import org.apache.activemq.broker.Broker;
+import org.apache.activemq.broker.BrokerPlugin;
+
+/**
+ * Broker plugin authorizing clients by the access privileges of their token, see {@link Acl}.
+ *
+ * The token login has to map the 'acl' claim, e.g. with the
+ * {@link org.apifocal.activemix.jaas.commons.mappers.AclMapper}. Clients without acl are granted
+ * the 'defaultAcl', nothing unless set.
+ */
+public class AclAuthorizationPlugin implements BrokerPlugin {
+
+    private String defaultAcl = "";
+    private long cacheSize = Acl.DEFAULT_CACHE_SIZE;
+
+    @Override
+    public Broker installPlugin(Broker broker) throws Exception {
+        return new AclAuthorizationBroker(broker, defaultAcl, cacheSize);
+    }
+
+    public String getDefaultAcl() {
+        return defaultAcl;
+    }
+
+    public void setDefaultAcl(String defaultAcl) {
+        this.defaultAcl = defaultAcl;
+    }
+
+    public long getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Sets how many distinct acls, and destinations per acl, are kept compiled.
+     */
+    public void setCacheSize(long cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+}
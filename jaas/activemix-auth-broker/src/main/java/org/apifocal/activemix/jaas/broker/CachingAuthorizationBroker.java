@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.broker;
+
+import java.security.Principal;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.activemq.broker.Broker;
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ConnectionId;
+import org.apache.activemq.security.AuthorizationMap;
+import org.apache.activemq.security.SecurityContext;
+import org.apifocal.activemix.jaas.commons.mappers.GroupRules;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ * Broker filter authorizing access through an ActiveMQ {@link AuthorizationMap}, remembering decisions.
+ *
+ * Decisions are kept per set of principals, destination and operation in a bounded cache, so
+ * connections of the same users share them. All temporary destinations share the decisions of the
+ * temporary destination acls; clients creating many short-lived temporary consumers are only
+ * checked once.
+ *
+ * Decisions are keyed by principals, so logins with changed group memberships never see stale
+ * decisions; what does go stale is the authorization map. Decisions expire 'ttl' milliseconds after
+ * they were made, which bounds how long a changed map goes unnoticed, and whoever changes the map
+ * can call {@link #invalidate()} to apply the change at once. {@link #invalidateOn(GroupRules)} does
+ * so for maps derived from a rules file.
+ */
+public class CachingAuthorizationBroker extends AbstractAuthorizationBroker {
+
+    private static final ActiveMQDestination TEMPORARY = null;
+
+    private final AuthorizationMap authorizationMap;
+    private final Cache<Decision, Boolean> decisions;
+    private final Interner<Set<Principal>> principalSets = Interners.newWeakInterner();
+    private final ConcurrentMap<ConnectionId, Set<Principal>> connections = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final Runnable invalidator = this::invalidate;
+    private volatile GroupRules groups;
+
+    public CachingAuthorizationBroker(Broker next, AuthorizationMap authorizationMap, long cacheSize, long ttl) {
+        super(next);
+        this.authorizationMap = authorizationMap;
+        this.decisions = CacheBuilder.newBuilder()
+            .maximumSize(cacheSize)
+            .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+            .build();
+    }
+
+    /**
+     * Drops all remembered decisions.
+     */
+    public void invalidate() {
+        decisions.invalidateAll();
+    }
+
+    /**
+     * Drops all remembered decisions whenever the given group rules are reloaded.
+     */
+    public void invalidateOn(GroupRules rules) {
+        rules.addListener(invalidator);
+        this.groups = rules;
+    }
+
+    @Override
+    public void stop() throws Exception {
+        GroupRules rules = groups;
+        if (rules != null) {
+            rules.removeListener(invalidator);
+        }
+        super.stop();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    @Override
+    protected void connectionRemoved(ConnectionId connectionId) {
+        connections.remove(connectionId);
+    }
+
+    @Override
+    protected void check(ConnectionContext context, ActiveMQDestination destination, Operation operation, String action) {
+        SecurityContext securityContext = context.getSecurityContext();
+        Decision decision = new Decision(principals(context, securityContext),
+            destination.isTemporary() ? TEMPORARY : destination, operation);
+        Boolean allowed = decisions.getIfPresent(decision);
+        if (allowed == null) {
+            misses.increment();
+            Set<?> acls = acls(destination, operation);
+            allowed = acls == null || securityContext.isInOneOf(acls);
+            decisions.put(decision, allowed);
+        } else {
+            hits.increment();
+        }
+        if (!allowed) {
+            throw new SecurityException("User " + securityContext.getUserName() + " is not authorized to " + action + ": " + destination);
+        }
+    }
+
+    private Set<?> acls(ActiveMQDestination destination, Operation operation) {
+        boolean temporary = destination.isTemporary();
+        switch (operation) {
+            case READ:
+                return temporary ? authorizationMap.getTempDestinationReadACLs() : authorizationMap.getReadACLs(destination);
+            case WRITE:
+                return temporary ? authorizationMap.getTempDestinationWriteACLs() : authorizationMap.getWriteACLs(destination);
+            default:
+                return temporary ? authorizationMap.getTempDestinationAdminACLs() : authorizationMap.getAdminACLs(destination);
+        }
+    }
+
+    private Set<Principal> principals(ConnectionContext context, SecurityContext securityContext) {
+        ConnectionId connectionId = context.getConnectionId();
+        Set<Principal> principals = connectionId != null ? connections.get(connectionId) : null;
+        if (principals == null) {
+            // equal sets of principals are one instance, which keeps the decision keys small and cheap to compare
+            principals = principalSets.intern(ImmutableSet.copyOf(securityContext.getPrincipals()));
+            if (connectionId != null) {
+                connections.put(connectionId, principals);
+            }
+        }
+        return principals;
+    }
+
+    private static final class Decision {
+        private final Set<Principal> principals;
+        private final ActiveMQDestination destination;
+        private final Operation operation;
+        private final int hash;
+
+        Decision(Set<Principal> principals, ActiveMQDestination destination, Operation operation) {
+            this.principals = principals;
+            this.destination = destination;
+            this.operation = operation;
+            this.hash = 31 * (31 * System.identityHashCode(principals) + Objects.hashCode(destination)) + operation.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Decision)) return false;
+            Decision that = (Decision) o;
+            // principal sets are interned
+            return principals == that.principals && operation == that.operation && Objects.equals(destination, that.destination);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+}
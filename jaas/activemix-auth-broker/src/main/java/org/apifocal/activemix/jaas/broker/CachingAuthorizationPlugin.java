@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.broker;
+
+import java.nio.file.Paths;
+
+import org.apache.activemq.broker.Broker;
+import org.apache.activemq.broker.BrokerPlugin;
+import org.apache.activemq.security.AuthorizationMap;
+import org.apifocal.activemix.commons.FileWatcher;
+import org.apifocal.activemix.jaas.commons.mappers.GroupRules;
+
+/**
+ * Broker plugin authorizing access through an {@link AuthorizationMap}, like the ActiveMQ
+ * authorization plugin, but remembering up to 'cacheSize' decisions for 'ttl' milliseconds. The
+ * ttl bounds how long changes of the authorization map take to apply. Decisions are also dropped
+ * when the 'groupsFile' changes, if set.
+ */
+public class CachingAuthorizationPlugin implements BrokerPlugin {
+
+    public static final long DEFAULT_CACHE_SIZE = 10000L;
+    public static final long DEFAULT_TTL = 60000L;
+
+    private AuthorizationMap authorizationMap;
+    private long cacheSize = DEFAULT_CACHE_SIZE;
+    private long ttl = DEFAULT_TTL;
+    private String groupsFile;
+    private long pollInterval = FileWatcher.DEFAULT_POLL_INTERVAL;
+
+    @Override
+    public Broker installPlugin(Broker broker) throws Exception {
+        if (authorizationMap == null) {
+            throw new IllegalArgumentException("You must configure an 'authorizationMap'");
+        }
+        CachingAuthorizationBroker authorizationBroker = new CachingAuthorizationBroker(broker, authorizationMap, cacheSize, ttl);
+        if (groupsFile != null) {
+            GroupRules rules = GroupRules.forFile(Paths.get(groupsFile));
+            rules.watch(pollInterval);
+            authorizationBroker.invalidateOn(rules);
+        }
+        return authorizationBroker;
+    }
+
+    public AuthorizationMap getAuthorizationMap() {
+        return authorizationMap;
+    }
+
+    public void setAuthorizationMap(AuthorizationMap authorizationMap) {
+        this.authorizationMap = authorizationMap;
+    }
+
+    public long getCacheSize() {
+        return cacheSize;
+    }
+
+    public void setCacheSize(long cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(long ttl) {
+        this.ttl = ttl;
+    }
+
+    public String getGroupsFile() {
+        return groupsFile;
+    }
+
+    public void setGroupsFile(String groupsFile) {
+        this.groupsFile = groupsFile;
+    }
+
+    public long getPollInterval() {
+        return pollInterval;
+    }
+
+    public void setPollInterval(long pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+
+}
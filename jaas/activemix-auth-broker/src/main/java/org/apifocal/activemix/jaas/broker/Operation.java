@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.broker;
+
+/**
+ * Operations on a destination which are subject to authorization.
+ */
+public enum Operation {
+
+    /** Consuming from the destination. */
+    READ,
+
+    /** Sending to the destination. */
+    WRITE,
+
+    /** Creating or removing the destination. */
+    ADMIN
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.broker;
+
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AclTest {
+
+    @Test
+    public void testAllDestinations() {
+        Acl acl = Acl.parse("rw");
+
+        Assert.assertTrue(acl.allows(new ActiveMQQueue("orders"), Acl.READ | Acl.WRITE));
+        Assert.assertTrue(acl.allows(new ActiveMQTopic("prices.eur"), Acl.WRITE));
+        Assert.assertFalse(acl.allows(new ActiveMQQueue("orders"), Acl.ADMIN));
+    }
+
+    @Test
+    public void testPatterns() {
+        Acl acl = Acl.parse("rw:orders.>, r:prices.*");
+
+        Assert.assertEquals(Acl.READ | Acl.WRITE, acl.mask(new ActiveMQQueue("orders.eu.new")));
+        Assert.assertEquals(Acl.READ, acl.mask(new ActiveMQTopic("prices.eur")));
+        Assert.assertEquals(0, acl.mask(new ActiveMQTopic("prices.eur.usd")));
+        Assert.assertEquals(0, acl.mask(new ActiveMQQueue("invoices")));
+    }
+
+    @Test
+    public void testQualifiedPatterns() {
+        Acl acl = Acl.parse("rwa:queue://orders.> r:topic://orders.>");
+
+        Assert.assertEquals(Acl.READ | Acl.WRITE | Acl.ADMIN, acl.mask(new ActiveMQQueue("orders.new")));
+        Assert.assertEquals(Acl.READ, acl.mask(new ActiveMQTopic("orders.new")));
+    }
+
+    @Test
+    public void testCompositeDestination() {
+        Acl acl = Acl.parse("rw:orders.>,r:audit");
+
+        Assert.assertTrue(acl.allows(new ActiveMQQueue("orders.a,orders.b"), Acl.WRITE));
+        Assert.assertTrue(acl.allows(new ActiveMQQueue("orders.a,audit"), Acl.READ));
+        Assert.assertFalse(acl.allows(new ActiveMQQueue("orders.a,audit"), Acl.WRITE));
+    }
+
+    @Test
+    public void testNone() {
+        ActiveMQDestination queue = new ActiveMQQueue("orders");
+        Assert.assertEquals(0, Acl.NONE.mask(queue));
+        Assert.assertEquals(0, Acl.parse(" ").mask(queue));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPermission() {
+        Acl.parse("rx:orders");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingPattern() {
+        Acl.parse("r:");
+    }
+
+}
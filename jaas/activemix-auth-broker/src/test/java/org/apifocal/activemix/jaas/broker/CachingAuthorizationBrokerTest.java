@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.broker;
+
+import java.security.Principal;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.activemq.advisory.AdvisorySupport;
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.broker.EmptyBroker;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTempQueue;
+import org.apache.activemq.command.ConnectionId;
+import org.apache.activemq.command.ConnectionInfo;
+import org.apache.activemq.command.ConsumerInfo;
+import org.apache.activemq.jaas.GroupPrincipal;
+import org.apache.activemq.security.AuthorizationMap;
+import org.apache.activemq.security.SecurityContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CachingAuthorizationBrokerTest {
+
+    private static final Set<GroupPrincipal> USERS = Collections.singleton(new GroupPrincipal("users"));
+
+    private final CountingAuthorizationMap authorizationMap = new CountingAuthorizationMap();
+    private final CachingAuthorizationBroker broker = new CachingAuthorizationBroker(new EmptyBroker(), authorizationMap, 100, 60000);
+
+    @Test
+    public void testSharedBetweenConnections() throws Exception {
+        broker.addConsumer(context("c1", "alice", "users"), consumer(new ActiveMQQueue("orders")));
+        broker.addConsumer(context("c2", "alice", "users"), consumer(new ActiveMQQueue("orders")));
+
+        Assert.assertEquals(1, authorizationMap.lookups.get());
+        Assert.assertEquals(1, broker.misses());
+        Assert.assertEquals(1, broker.hits());
+    }
+
+    @Test
+    public void testTemporaryDestinations() throws Exception {
+        ConnectionContext context = context("c1", "alice", "users");
+        for (int i = 0; i < 1000; i++) {
+            broker.addConsumer(context, consumer(new ActiveMQTempQueue("ID:c1:1:" + i)));
+        }
+
+        Assert.assertEquals(1, authorizationMap.lookups.get());
+    }
+
+    @Test
+    public void testDenied() throws Exception {
+        ConnectionContext context = context("c1", "eve", "guests");
+        for (int i = 0; i < 2; i++) {
+            try {
+                broker.addConsumer(context, consumer(new ActiveMQQueue("orders")));
+                Assert.fail("Expected read of orders to be denied");
+            } catch (SecurityException e) {
+                // expected
+            }
+        }
+        Assert.assertEquals(1, authorizationMap.lookups.get());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        ConnectionContext context = context("c1", "alice", "users");
+        broker.addConsumer(context, consumer(new ActiveMQQueue("orders")));
+        broker.invalidate();
+        broker.addConsumer(context, consumer(new ActiveMQQueue("orders")));
+
+        Assert.assertEquals(2, authorizationMap.lookups.get());
+    }
+
+    @Test
+    public void testExpired() throws Exception {
+        CachingAuthorizationBroker expiring = new CachingAuthorizationBroker(new EmptyBroker(), authorizationMap, 100, 50);
+        ConnectionContext context = context("c1", "alice", "users");
+        expiring.addConsumer(context, consumer(new ActiveMQQueue("orders")));
+        Thread.sleep(100);
+        expiring.addConsumer(context, consumer(new ActiveMQQueue("orders")));
+
+        Assert.assertEquals(2, authorizationMap.lookups.get());
+    }
+
+    @Test
+    public void testAdvisoryTopicsChecked() throws Exception {
+        broker.addConsumer(context("c1", "alice", "users"), consumer(AdvisorySupport.getConsumerAdvisoryTopic(new ActiveMQQueue("orders"))));
+
+        Assert.assertEquals(1, authorizationMap.lookups.get());
+    }
+
+    @Test
+    public void testConnectionRemoved() throws Exception {
+        ConnectionContext context = context("c1", "alice", "users");
+        broker.addConsumer(context, consumer(new ActiveMQQueue("orders")));
+        broker.removeConnection(context, new ConnectionInfo(context.getConnectionId()), null);
+        broker.addConsumer(context, consumer(new ActiveMQQueue("orders")));
+
+        // principals are looked up again, the decision is still known
+        Assert.assertEquals(1, authorizationMap.lookups.get());
+    }
+
+    private static ConnectionContext context(String connectionId, String user, String group) {
+        Set<Principal> principals = new HashSet<>();
+        principals.add(new GroupPrincipal(group));
+        ConnectionContext context = new ConnectionContext();
+        context.setConnectionId(new ConnectionId(connectionId));
+        context.setSecurityContext(new SecurityContext(user) {
+            @Override
+            public Set<Principal> getPrincipals() {
+                return principals;
+            }
+        });
+        return context;
+    }
+
+    private static ConsumerInfo consumer(ActiveMQDestination destination) {
+        ConsumerInfo info = new ConsumerInfo();
+        info.setDestination(destination);
+        return info;
+    }
+
+    private static class CountingAuthorizationMap implements AuthorizationMap {
+        private final AtomicInteger lookups = new AtomicInteger();
+
+        private Set<?> lookup() {
+            lookups.incrementAndGet();
+            return USERS;
+        }
+
+        @Override
+        public Set<?> getTempDestinationAdminACLs() {
+            return lookup();
+        }
+
+        @Override
+        public Set<?> getTempDestinationReadACLs() {
+            return lookup();
+        }
+
+        @Override
+        public Set<?> getTempDestinationWriteACLs() {
+            return lookup();
+        }
+
+        @Override
+        public Set<?> getAdminACLs(ActiveMQDestination destination) {
+            return lookup();
+        }
+
+        @Override
+        public Set<?> getReadACLs(ActiveMQDestination destination) {
+            return lookup();
+        }
+
+        @Override
+        public Set<?> getWriteACLs(ActiveMQDestination destination) {
+            return lookup();
+        }
+    }
+
+}
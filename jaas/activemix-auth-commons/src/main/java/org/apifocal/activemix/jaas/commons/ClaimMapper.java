@@ -18,6 +18,7 @@ package org.apifocal.activemix.jaas.commons;
 import com.nimbusds.jwt.JWTClaimsSet;
 
 import java.security.Principal;
+import java.util.Collection;
 import java.util.Set;
 
 /**
@@ -27,4 +28,12 @@ public interface ClaimMapper {
 
     Set<Principal> map(JWTClaimsSet claimsSet);
 
+    /**
+     * Adds the principals of the claims to the given collection; mappers should override this to
+     * avoid building an intermediate set.
+     */
+    default void map(JWTClaimsSet claimsSet, Collection<? super Principal> principals) {
+        principals.addAll(map(claimsSet));
+    }
+
 }
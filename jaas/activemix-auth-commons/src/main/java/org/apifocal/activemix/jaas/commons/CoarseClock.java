@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall clock read from a field refreshed in the background, for checks which happen on every
+ * login but need no better than {@link #RESOLUTION} milliseconds of precision.
+ *
+ * The clock is ticked by a daemon thread started on first use; {@link #stop()} ends it, e.g. when
+ * the realms using the clock are cleared, and the next reading starts it again.
+ */
+public final class CoarseClock {
+
+    public static final long RESOLUTION = 10L;
+
+    private static volatile long now;
+    private static volatile ScheduledExecutorService ticker;
+
+    /**
+     * @return current time in milliseconds since the epoch, late by at most {@link #RESOLUTION}
+     */
+    public static long millis() {
+        if (ticker == null) {
+            start();
+        }
+        return now;
+    }
+
+    /**
+     * Stops the thread ticking the clock.
+     */
+    public static synchronized void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+            ticker = null;
+        }
+    }
+
+    public static boolean isRunning() {
+        return ticker != null;
+    }
+
+    private static synchronized void start() {
+        if (ticker == null) {
+            now = System.currentTimeMillis();
+            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "activemix-coarse-clock");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleAtFixedRate(() -> now = System.currentTimeMillis(), RESOLUTION, RESOLUTION, TimeUnit.MILLISECONDS);
+            ticker = executor;
+        }
+    }
+
+    private CoarseClock() {
+        // utility
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apifocal.activemix.commons.Settings;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Token bucket limiter of failed logins, per key (a user or an issuer).
+ *
+ * Each key has a bucket of 'burst' permits, refilled at 'rate' permits per second. Every failed
+ * login takes a permit; once the bucket of a key is empty, logins for that key are refused
+ * without looking at the token until permits are refilled. Successful logins take no permits.
+ * At most 'size' buckets are kept, idle buckets are dropped once full again.
+ */
+public class FailureLimiter {
+
+    public static final long DEFAULT_SIZE = 10000L;
+
+    private final double burst;
+    private final double rate;
+    private final Cache<String, Bucket> buckets;
+    private final LongAdder limited = new LongAdder();
+
+    public FailureLimiter(Settings settings, int defaultBurst, double defaultRate) {
+        this(settings.intOption("burst", defaultBurst),
+            settings.doubleOption("rate", defaultRate),
+            settings.sizeOption("size", DEFAULT_SIZE));
+    }
+
+    public FailureLimiter(int burst, double rate, long size) {
+        if (burst < 1 || rate <= 0) {
+            throw new IllegalArgumentException("Limiter requires positive burst and rate");
+        }
+        this.burst = burst;
+        this.rate = rate;
+        this.buckets = CacheBuilder.newBuilder()
+            .maximumSize(size)
+            .expireAfterAccess((long) Math.ceil(burst / rate * 1000), TimeUnit.MILLISECONDS)
+            .build();
+    }
+
+    /**
+     * @return true if logins for the key are refused; counted as a rejection
+     */
+    public boolean isLimited(String key) {
+        Bucket bucket = key != null ? buckets.getIfPresent(key) : null;
+        if (bucket != null && !bucket.available(System.nanoTime())) {
+            limited.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Takes a permit from the bucket of the key, following a failed login.
+     */
+    public void failed(String key) {
+        if (key == null) {
+            return;
+        }
+        try {
+            buckets.get(key, () -> new Bucket(burst)).take(System.nanoTime());
+        } catch (ExecutionException e) {
+            // creating a bucket cannot fail
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public long limited() {
+        return limited.sum();
+    }
+
+    public void clear() {
+        buckets.invalidateAll();
+    }
+
+    @Override
+    public String toString() {
+        return "FailureLimiter(burst=" + (int) burst + ", rate=" + rate + ", buckets=" + buckets.size() + ", limited=" + limited() + ")";
+    }
+
+    private final class Bucket {
+        private double permits;
+        private long refilled;
+
+        Bucket(double permits) {
+            this.permits = permits;
+            this.refilled = System.nanoTime();
+        }
+
+        synchronized boolean available(long now) {
+            refill(now);
+            return permits >= 1;
+        }
+
+        synchronized void take(long now) {
+            refill(now);
+            permits = Math.max(0, permits - 1);
+        }
+
+        private void refill(long now) {
+            permits = Math.min(burst, permits + (now - refilled) * rate / TimeUnit.SECONDS.toNanos(1));
+            refilled = now;
+        }
+    }
+
+}
@@ -16,17 +16,31 @@
 package org.apifocal.activemix.jaas.commons;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
 import java.security.KeyPair;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
 import org.bouncycastle.util.encoders.Hex;
 
+import com.google.common.primitives.Bytes;
+import com.nimbusds.jose.crypto.bc.BouncyCastleProviderSingleton;
+
 
 public final class Keys {
     private static final String MD5_ALGO = "MD5";
@@ -40,12 +54,83 @@ public final class Keys {
         {"SHA-512", "SHA512"},
     };
 
+    public static final String ED25519 = "Ed25519";
+
+    // DER prefixes of Ed25519 keys, the raw key makes up the remaining 32 bytes (RFC 8410)
+    private static final byte[] ED25519_PUBLIC_PREFIX = Hex.decode("302a300506032b6570032100");
+    private static final byte[] ED25519_PRIVATE_PREFIX = Hex.decode("302e020100300506032b657004220420");
+    private static final int ED25519_KEY_SIZE = 32;
+
+    // key factories are not thread safe, but expensive enough to look up to keep one per thread
+    private static final ThreadLocal<Map<String, KeyFactory>> KEY_FACTORIES = ThreadLocal.withInitial(HashMap::new);
+
     public static KeyPair readKeyPair(String key, PasswordProvider password) throws Exception {
         return TokensImpl.readKeyPair(new InputStreamReader(new ByteArrayInputStream(key.getBytes(StandardCharsets.UTF_8))), password);
     }
 
+    /**
+     * @return the key pair in the file; unencrypted keys are cached until the file changes
+     */
     public static KeyPair readKeyPair(Path path, PasswordProvider password) throws Exception {
-        return TokensImpl.readKeyPair(Files.newBufferedReader(path), password);
+        return TokensImpl.readKeyPair(path, password);
+    }
+
+    /**
+     * @return the key factory of the algorithm for the calling thread; Ed25519 keys come from Bouncy Castle,
+     *         which is available on all JVMs this runs on
+     */
+    public static KeyFactory keyFactory(String algorithm) throws NoSuchAlgorithmException {
+        Map<String, KeyFactory> factories = KEY_FACTORIES.get();
+        KeyFactory factory = factories.get(algorithm);
+        if (factory == null) {
+            factory = ED25519.equals(algorithm)
+                ? KeyFactory.getInstance(algorithm, BouncyCastleProviderSingleton.getInstance())
+                : KeyFactory.getInstance(algorithm);
+            factories.put(algorithm, factory);
+        }
+        return factory;
+    }
+
+    /**
+     * @return true for Ed25519 keys, whether provided by the JDK (algorithm 'EdDSA') or Bouncy Castle
+     */
+    public static boolean isEd25519(Key key) {
+        return key != null && (ED25519.equals(key.getAlgorithm()) || "EdDSA".equals(key.getAlgorithm()));
+    }
+
+    /**
+     * @return the Ed25519 public key of the raw 32 byte encoding used by ssh and JWK
+     */
+    public static PublicKey ed25519PublicKey(byte[] raw) throws GeneralSecurityException {
+        return keyFactory(ED25519).generatePublic(new X509EncodedKeySpec(Bytes.concat(ED25519_PUBLIC_PREFIX, raw)));
+    }
+
+    /**
+     * @return the Ed25519 private key of the raw 32 byte seed
+     */
+    public static PrivateKey ed25519PrivateKey(byte[] seed) throws GeneralSecurityException {
+        return keyFactory(ED25519).generatePrivate(new PKCS8EncodedKeySpec(Bytes.concat(ED25519_PRIVATE_PREFIX, seed)));
+    }
+
+    /**
+     * @return the raw 32 byte encoding of an Ed25519 public key
+     */
+    public static byte[] rawEd25519Key(PublicKey key) {
+        byte[] encoded = key.getEncoded();
+        return Arrays.copyOfRange(encoded, encoded.length - ED25519_KEY_SIZE, encoded.length);
+    }
+
+    /**
+     * @return the raw 32 byte seed of an Ed25519 private key
+     */
+    public static byte[] rawEd25519Key(PrivateKey key) throws GeneralSecurityException {
+        try {
+            // the encoding may carry the public key as well, so it takes parsing rather than slicing
+            PrivateKeyInfo info = PrivateKeyInfo.getInstance(key.getEncoded());
+            return ASN1OctetString.getInstance(info.parsePrivateKey()).getOctets();
+        } catch (IOException | IllegalArgumentException e) {
+            throw new GeneralSecurityException("Invalid Ed25519 private key", e);
+        }
     }
 
     /**
@@ -63,10 +148,20 @@ public final class Keys {
      * @throws NoSuchAlgorithmException - if the algorithm provided is invalid
      */
     public static String fingerprint(PublicKey key, String algorithm) throws NoSuchAlgorithmException {
-        String digest = Hex.toHexString(MessageDigest.getInstance(algorithm).digest(key.getEncoded()));
+        return fingerprint(MessageDigest.getInstance(algorithm).digest(key.getEncoded()), algorithm);
+    }
+
+    /**
+     * Builds a fingerprint from an already computed digest
+     * @param digest - the digest of the encoded key
+     * @param algorithm - represents the algorithm used to compute the digest
+     * @return a {@link String} with digest key appended to digest name
+     */
+    public static String fingerprint(byte[] digest, String algorithm) {
+        String text = Hex.toHexString(digest);
         StringBuilder fingerprint = new StringBuilder();
         fingerprint.append(digestAlgorithmToName(algorithm)).append(":")
-            .append(MD5_ALGO.equals(algorithm) ? md5ToText(digest) : digest);
+            .append(MD5_ALGO.equals(algorithm) ? md5ToText(text) : text);
         return fingerprint.toString();
     }
 
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons;
+
+import java.security.Principal;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Intern pool of principals.
+ *
+ * Users reconnecting over and over map to the same principals each time; interning hands out one
+ * shared instance per principal type and name instead of allocating new ones on every login.
+ * Principals are held weakly, they are dropped once no subject refers to them anymore.
+ */
+public final class Principals {
+
+    private static final ClassValue<ConcurrentMap<String, Principal>> POOLS = new ClassValue<ConcurrentMap<String, Principal>>() {
+        @Override
+        protected ConcurrentMap<String, Principal> computeValue(Class<?> type) {
+            return CacheBuilder.newBuilder().weakValues().<String, Principal>build().asMap();
+        }
+    };
+
+    /**
+     * @return the pooled principal of the given type and name, created by the factory if not pooled yet
+     */
+    public static <P extends Principal> P intern(Class<P> type, String name, Function<String, P> factory) {
+        if (name == null) {
+            return factory.apply(null);
+        }
+        ConcurrentMap<String, Principal> pool = POOLS.get(type);
+        Principal principal = pool.get(name);
+        if (principal == null) {
+            principal = pool.computeIfAbsent(name, factory);
+        }
+        return type.cast(principal);
+    }
+
+    public static AclPrincipal acl(String name) {
+        return intern(AclPrincipal.class, name, AclPrincipal::new);
+    }
+
+    public static IssuerPrincipal issuer(String name) {
+        return intern(IssuerPrincipal.class, name, IssuerPrincipal::new);
+    }
+
+    public static SubjectPrincipal subject(String name) {
+        return intern(SubjectPrincipal.class, name, SubjectPrincipal::new);
+    }
+
+    private Principals() {
+        // utility
+    }
+
+}
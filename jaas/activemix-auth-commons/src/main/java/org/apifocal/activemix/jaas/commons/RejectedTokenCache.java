@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apifocal.activemix.commons.Settings;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+
+/**
+ * Bounded cache of tokens which failed validation.
+ *
+ * Keys are the same token digests as used by {@link VerifiedTokenCache}. A token known to fail
+ * again, such as an expired token, is remembered until the time given by
+ * {@link TokenValidationException#getRejectUntil()}, but no longer than the configured 'ttl'
+ * (milliseconds). Other failures are remembered for 'failureTtl' milliseconds, which spares
+ * clients retrying a bad token in a loop from being parsed and verified over and over.
+ */
+public class RejectedTokenCache {
+
+    public static final long DEFAULT_SIZE = 10000L;
+    public static final long DEFAULT_TTL = Tokens.minutes(5);
+    public static final long DEFAULT_FAILURE_TTL = Tokens.seconds(30);
+
+    private final Cache<HashCode, Long> cache;
+    private final long ttl;
+    private final long failureTtl;
+    private final LongAdder hits = new LongAdder();
+
+    public RejectedTokenCache(Settings settings) {
+        this(settings.sizeOption("size", DEFAULT_SIZE),
+            settings.durationOption("ttl", DEFAULT_TTL),
+            settings.durationOption("failureTtl", DEFAULT_FAILURE_TTL));
+    }
+
+    public RejectedTokenCache(long size, long ttl) {
+        this(size, ttl, Math.min(ttl, DEFAULT_FAILURE_TTL));
+    }
+
+    public RejectedTokenCache(long size, long ttl, long failureTtl) {
+        this.ttl = ttl;
+        this.failureTtl = Math.min(ttl, failureTtl);
+        this.cache = CacheBuilder.newBuilder()
+            .maximumSize(size)
+            .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+            .build();
+    }
+
+    /**
+     * @return true if the token was rejected before and is certain to be rejected again
+     */
+    public boolean isRejected(HashCode key) {
+        Long until = cache.getIfPresent(key);
+        if (until == null) {
+            return false;
+        }
+        if (until <= CoarseClock.millis()) {
+            cache.invalidate(key);
+            return false;
+        }
+        hits.increment();
+        return true;
+    }
+
+    /**
+     * Remembers a token which failed validation for a reason which may not hold for long.
+     */
+    public void reject(HashCode key) {
+        reject(key, CoarseClock.millis() + failureTtl);
+    }
+
+    public void reject(HashCode key, long until) {
+        long now = CoarseClock.millis();
+        if (until > now) {
+            cache.put(key, Math.min(until, now + ttl));
+        }
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "RejectedTokenCache(size=" + size() + ", hits=" + hits() + ")";
+    }
+
+}
@@ -15,89 +15,362 @@
  */
 package org.apifocal.activemix.jaas.commons;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.math.BigInteger;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.AlgorithmParameters;
 import java.security.GeneralSecurityException;
-import java.security.KeyFactory;
 import java.security.PublicKey;
 import java.security.spec.DSAPublicKeySpec;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
 import java.security.spec.RSAPublicKeySpec;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Optional;
-import java.util.function.Predicate;
+import java.util.List;
+import java.util.function.Consumer;
 
-import com.nimbusds.jose.util.Base64;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * 
- * TODO: important stuff; add javadoc and comments
- *          see: https://tools.ietf.org/html/rfc4253#section-6.6
+ * Decoder of public keys in the ssh wire format, as found in authorized keys files.
+ *
+ * Supports 'ssh-rsa', 'ssh-dss', 'ecdsa-sha2-nistp256/384/521' and 'ssh-ed25519' keys.
+ *          see: https://tools.ietf.org/html/rfc4253#section-6.6, https://tools.ietf.org/html/rfc5656#section-3.1
+ *          and https://tools.ietf.org/html/rfc8709#section-4
+ *
+ * Keys are decoded straight from the bytes of the file: the Base64 text is decoded in place and key
+ * fields are read at their offsets in the decoded blob, without intermediate strings or arrays.
  */
 public class SshKeyCodec {
-    
+
+    private static final Logger LOG = LoggerFactory.getLogger(SshKeyCodec.class);
+
+    private static final byte[] SSH_RSA = ascii("ssh-rsa");
+    private static final byte[] SSH_DSS = ascii("ssh-dss");
+    private static final byte[] SSH_ED25519 = ascii("ssh-ed25519");
+    private static final byte[] ECDSA_PREFIX = ascii("ecdsa-sha2-");
+    private static final int ED25519_KEY_SIZE = 32;
+
+    // curve parameters are immutable, they are resolved once per curve
+    private static final List<NamedCurve> CURVES = curves("nistp256", "secp256r1", "nistp384", "secp384r1",
+        "nistp521", "secp521r1");
+
+    private static final byte[] BASE64 = base64();
+    // BigInteger(int, byte[], int, int) saves copying key fields, but is only available on Java 9 and later
+    private static final MethodHandle BIG_INTEGER = bigIntegerConstructor();
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[1024]);
+
     public static PublicKey parse(String encodedKey) {
-        Optional<String> keyType = Arrays.stream(encodedKey.split(" ")).filter(keyPart()).findFirst();
-        Blob blob = keyType.map(keyString -> new Blob(new Base64(keyString).decode())).orElse(null);
+        return parse(ByteBuffer.wrap(encodedKey.getBytes(StandardCharsets.US_ASCII)));
+    }
 
-        if (blob != null) {
-            try {
-                String type = blob.readString();
-                return "ssh-rsa".equals(type) ? parseRsaKey(blob) : "ssh-dss".equals(type) ? parseDsaKey(blob) : null;
-            } catch (GeneralSecurityException e) {
-                // TODO: log?
+    /**
+     * Parses the key of an authorized keys line between the position and the limit of the buffer.
+     *
+     * The Base64 encoded key is decoded in place if the buffer is writable and backed by an array,
+     * i.e. its content is overwritten; other buffers are decoded into a per thread scratch array.
+     *
+     * @return the key, or {@code null} if the line holds no supported key
+     */
+    public static PublicKey parse(ByteBuffer line) {
+        int position = line.position();
+        int limit = line.limit();
+        while (position < limit) {
+            while (position < limit && isSeparator(line.get(position))) {
+                position++;
+            }
+            int end = position;
+            while (end < limit && !isSeparator(line.get(end))) {
+                end++;
             }
+            // key options and type come before the key, which is the first part to start with 'AAAA'
+            if (end - position > 4 && isKeyPart(line, position)) {
+                return decode(line, position, end - position);
+            }
+            position = end;
         }
         return null;
     }
-    
+
+    /**
+     * Parses the keys of all lines between the position and the limit of the buffer, see {@link #parse(ByteBuffer)}.
+     *
+     * @return the number of keys passed to the consumer
+     */
+    public static int parseLines(ByteBuffer keys, Consumer<PublicKey> consumer) {
+        int count = 0;
+        ByteBuffer line = keys.duplicate();
+        int position = keys.position();
+        int limit = keys.limit();
+        while (position < limit) {
+            int end = position;
+            while (end < limit && keys.get(end) != '\n') {
+                end++;
+            }
+            // through Buffer, ByteBuffer overrides these on newer JVMs only
+            ((Buffer) line).limit(end);
+            ((Buffer) line).position(position);
+            PublicKey key = parse(line);
+            if (key != null) {
+                consumer.accept(key);
+                count++;
+            }
+            position = end + 1;
+        }
+        return count;
+    }
+
+    private static PublicKey decode(ByteBuffer line, int offset, int length) {
+        byte[] b;
+        int o;
+        if (line.hasArray() && !line.isReadOnly()) {
+            b = line.array();
+            o = line.arrayOffset() + offset;
+        } else {
+            b = scratch(length);
+            o = 0;
+            for (int i = 0; i < length; i++) {
+                b[i] = line.get(offset + i);
+            }
+        }
+
+        try {
+            Blob blob = new Blob(b, o, o + decodeBase64(b, o, length));
+            blob.next();
+            if (blob.is(SSH_RSA)) {
+                return parseRsaKey(blob);
+            } else if (blob.is(SSH_DSS)) {
+                return parseDsaKey(blob);
+            } else if (blob.is(SSH_ED25519)) {
+                return parseEd25519Key(blob);
+            } else if (blob.startsWith(ECDSA_PREFIX)) {
+                return parseEcKey(blob);
+            }
+        } catch (GeneralSecurityException | RuntimeException e) {
+            LOG.debug("Cannot decode ssh key: {}", e.getMessage());
+        }
+        return null;
+    }
+
     private static PublicKey parseRsaKey(Blob blob) throws GeneralSecurityException {
-        BigInteger e = blob.readBigInteger();
-        BigInteger m = blob.readBigInteger();
-        return KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(m, e));
+        BigInteger e = blob.next().bigInteger();
+        BigInteger m = blob.next().bigInteger();
+        return Keys.keyFactory("RSA").generatePublic(new RSAPublicKeySpec(m, e));
     }
 
     private static PublicKey parseDsaKey(Blob blob) throws GeneralSecurityException {
-        BigInteger p = blob.readBigInteger();
-        BigInteger q = blob.readBigInteger();
-        BigInteger g = blob.readBigInteger();
-        BigInteger y = blob.readBigInteger();
-        return KeyFactory.getInstance("DSA").generatePublic(new DSAPublicKeySpec(y, p, q, g));
+        BigInteger p = blob.next().bigInteger();
+        BigInteger q = blob.next().bigInteger();
+        BigInteger g = blob.next().bigInteger();
+        BigInteger y = blob.next().bigInteger();
+        return Keys.keyFactory("DSA").generatePublic(new DSAPublicKeySpec(y, p, q, g));
+    }
+
+    private static PublicKey parseEd25519Key(Blob blob) throws GeneralSecurityException {
+        if (blob.next().length != ED25519_KEY_SIZE) {
+            throw new GeneralSecurityException("Invalid Ed25519 key");
+        }
+        return Keys.ed25519PublicKey(blob.bytes());
+    }
+
+    private static PublicKey parseEcKey(Blob blob) throws GeneralSecurityException {
+        // the curve is named twice, once in the key type and once in the key itself
+        NamedCurve curve = null;
+        for (NamedCurve candidate : CURVES) {
+            if (blob.length == ECDSA_PREFIX.length + candidate.name.length && blob.endsWith(candidate.name)) {
+                curve = candidate;
+            }
+        }
+        if (curve == null || !blob.next().is(curve.name)) {
+            throw new GeneralSecurityException("Unsupported curve");
+        }
+
+        // only uncompressed points are used by ssh: 0x04 | x | y
+        int size = (curve.params.getCurve().getField().getFieldSize() + 7) / 8;
+        blob.next();
+        if (blob.length != 2 * size + 1 || blob.b[blob.start] != 4) {
+            throw new GeneralSecurityException("Invalid point on curve " + new String(curve.name, StandardCharsets.US_ASCII));
+        }
+        ECPoint w = new ECPoint(bigInteger(blob.b, blob.start + 1, size), bigInteger(blob.b, blob.start + 1 + size, size));
+        return Keys.keyFactory("EC").generatePublic(new ECPublicKeySpec(w, curve.params));
+    }
+
+    /**
+     * Decodes standard or URL safe Base64 in place; every decoded byte is written behind the text it came from.
+     *
+     * @return the number of decoded bytes
+     */
+    static int decodeBase64(byte[] b, int offset, int length) {
+        int w = offset;
+        int bits = 0;
+        int count = 0;
+        for (int r = offset; r < offset + length; r++) {
+            int c = b[r] & 0xFF;
+            if (c == '=') {
+                break;
+            }
+            int value = c < BASE64.length ? BASE64[c] : -1;
+            if (value < 0) {
+                throw new IllegalArgumentException("Invalid Base64 character '" + (char) c + "'");
+            }
+            bits = (bits << 6) | value;
+            count += 6;
+            if (count >= 8) {
+                count -= 8;
+                b[w++] = (byte) (bits >> count);
+            }
+        }
+        return w - offset;
+    }
+
+    private static BigInteger bigInteger(byte[] b, int offset, int length) {
+        // key fields are unsigned (or positive mpints), leading zeros don't matter
+        if (BIG_INTEGER != null) {
+            try {
+                return (BigInteger) BIG_INTEGER.invokeExact(1, b, offset, length);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return new BigInteger(1, Arrays.copyOfRange(b, offset, offset + length));
+    }
+
+    private static MethodHandle bigIntegerConstructor() {
+        try {
+            return MethodHandles.publicLookup().findConstructor(BigInteger.class,
+                MethodType.methodType(void.class, int.class, byte[].class, int.class, int.class));
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static boolean isKeyPart(ByteBuffer line, int position) {
+        // all key encodings start with the length of the key type, hence 'AAAA'
+        return line.get(position) == 'A' && line.get(position + 1) == 'A'
+            && line.get(position + 2) == 'A' && line.get(position + 3) == 'A';
+    }
+
+    private static boolean isSeparator(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
     }
 
-    private static Predicate<String> keyPart() {
-        // both RSA and DSA keys encoding start with 'AAAA'
-        return keyString -> keyString.startsWith("AAAA");
+    private static byte[] scratch(int length) {
+        byte[] scratch = SCRATCH.get();
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, 2 * scratch.length)];
+            SCRATCH.set(scratch);
+        }
+        return scratch;
+    }
+
+    private static byte[] base64() {
+        byte[] table = new byte[128];
+        Arrays.fill(table, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            table[alphabet.charAt(i)] = (byte) i;
+        }
+        table['-'] = 62;
+        table['_'] = 63;
+        return table;
     }
 
+    private static List<NamedCurve> curves(String... names) {
+        List<NamedCurve> curves = new ArrayList<>();
+        for (int i = 0; i < names.length; i += 2) {
+            try {
+                AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+                parameters.init(new ECGenParameterSpec(names[i + 1]));
+                curves.add(new NamedCurve(ascii(names[i]), parameters.getParameterSpec(ECParameterSpec.class)));
+            } catch (GeneralSecurityException e) {
+                LOG.warn("Curve {} not supported by this JVM", names[i + 1]);
+            }
+        }
+        return curves;
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static final class NamedCurve {
+        private final byte[] name;
+        private final ECParameterSpec params;
+
+        private NamedCurve(byte[] name, ECParameterSpec params) {
+            this.name = name;
+            this.params = params;
+        }
+    }
+
+    /**
+     * Cursor over the fields of a decoded key, each prefixed by its length.
+     */
     private static class Blob {
         private final byte[] b;
-        private int o = 0;
-        
-        public Blob(byte[] data) {
-            this(data, 0);
-        }
+        private final int limit;
+        private int o;
+        // the field last read
+        private int start;
+        private int length;
 
-        public Blob(byte[] data, int offset) {
+        Blob(byte[] data, int offset, int limit) {
             this.b = data;
             this.o = offset;
+            this.limit = limit;
         }
 
-        public int readInt() {
-            return ((b[o++] & 0xFF) << 24) | ((b[o++] & 0xFF) << 16) | ((b[o++] & 0xFF) << 8) | (b[o++] & 0xFF);
+        Blob next() {
+            if (limit - o < 4) {
+                throw new IllegalArgumentException("Truncated key");
+            }
+            int l = ((b[o++] & 0xFF) << 24) | ((b[o++] & 0xFF) << 16) | ((b[o++] & 0xFF) << 8) | (b[o++] & 0xFF);
+            if (l < 0 || l > limit - o) {
+                throw new IllegalArgumentException("Truncated key");
+            }
+            start = o;
+            length = l;
+            o += l;
+            return this;
         }
 
-        public BigInteger readBigInteger() {
-            int l = readInt();
-            byte[] result = new byte[l];
-            System.arraycopy(b, o, result, 0, l);
-            o += l;
-            return new BigInteger(result);
+        boolean is(byte[] value) {
+            return length == value.length && startsWith(value);
         }
-        
-        public String readString() {
-            int l = readInt();
-            String result = new String(b, o, l);
-            o += l;
-            return result;
+
+        boolean startsWith(byte[] prefix) {
+            return length >= prefix.length && regionMatches(start, prefix);
+        }
+
+        boolean endsWith(byte[] suffix) {
+            return length >= suffix.length && regionMatches(start + length - suffix.length, suffix);
+        }
+
+        BigInteger bigInteger() {
+            return SshKeyCodec.bigInteger(b, start, length);
+        }
+
+        byte[] bytes() {
+            return Arrays.copyOfRange(b, start, start + length);
+        }
+
+        private boolean regionMatches(int offset, byte[] value) {
+            for (int i = 0; i < value.length; i++) {
+                if (b[offset + i] != value[i]) {
+                    return false;
+                }
+            }
+            return true;
         }
     }
 
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons;
+
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+/**
+ * Signs tokens with one key, read and prepared once.
+ *
+ * The header and signer are built when the minter is created and shared by all tokens; signers are
+ * thread safe, so batches are signed in parallel on the common fork-join pool. Tokens of a batch are
+ * returned in the order of their claims.
+ */
+public final class TokenMinter {
+
+    private final JWSHeader header;
+    private final JWSSigner signer;
+    private final Stats stats = new Stats();
+
+    public TokenMinter(KeyPair keyPair) throws JOSEException, GeneralSecurityException {
+        JWSAlgorithm algorithm = Tokens.algorithm(keyPair.getPublic());
+        if (algorithm == null) {
+            throw new JOSEException("Cannot sign tokens with " + keyPair.getPublic().getAlgorithm() + " keys");
+        }
+        // the fingerprint of the signer lets validators go straight to the right key
+        this.header = new JWSHeader.Builder(algorithm)
+            .keyID(Keys.fingerprint(keyPair.getPublic(), Keys.defaultAlgorithm()))
+            .build();
+        this.signer = Tokens.signer(keyPair);
+    }
+
+    public static TokenMinter forKey(Path privkey, PasswordProvider password) throws Exception {
+        return new TokenMinter(Keys.readKeyPair(privkey, password));
+    }
+
+    public static TokenMinter forKey(String privkey, PasswordProvider password) throws Exception {
+        return new TokenMinter(Keys.readKeyPair(privkey, password));
+    }
+
+    public JWSAlgorithm getAlgorithm() {
+        return header.getAlgorithm();
+    }
+
+    public String getKeyID() {
+        return header.getKeyID();
+    }
+
+    /**
+     * @return the serialized token of the claims
+     */
+    public String mint(JWTClaimsSet claims) throws JOSEException {
+        long start = System.nanoTime();
+        String token = sign(claims);
+        stats.add(1, System.nanoTime() - start);
+        return token;
+    }
+
+    /**
+     * Signs the tokens of all claims in parallel.
+     *
+     * @return the serialized tokens, in the order of the claims
+     */
+    public List<String> mint(Stream<JWTClaimsSet> claims) throws JOSEException {
+        long start = System.nanoTime();
+        try {
+            List<String> tokens = claims.parallel().map(this::signUnchecked).collect(Collectors.toList());
+            stats.add(tokens.size(), System.nanoTime() - start);
+            return tokens;
+        } catch (SigningException e) {
+            throw e.getCause();
+        }
+    }
+
+    public Stats stats() {
+        return stats;
+    }
+
+    private String sign(JWTClaimsSet claims) throws JOSEException {
+        SignedJWT token = new SignedJWT(header, claims);
+        token.sign(signer);
+        return token.serialize();
+    }
+
+    private String signUnchecked(JWTClaimsSet claims) {
+        try {
+            return sign(claims);
+        } catch (JOSEException e) {
+            throw new SigningException(e);
+        }
+    }
+
+    /**
+     * Tokens minted and the time it took; batches count with the time from start to end, not the time
+     * of each signature.
+     */
+    public static final class Stats {
+        private final LongAdder minted = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        private void add(long tokens, long time) {
+            minted.add(tokens);
+            nanos.add(time);
+        }
+
+        public long minted() {
+            return minted.sum();
+        }
+
+        public long totalTime(TimeUnit unit) {
+            return unit.convert(nanos.sum(), TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @return tokens minted per second
+         */
+        public double throughput() {
+            long time = nanos.sum();
+            return time > 0 ? minted.sum() * (double) TimeUnit.SECONDS.toNanos(1) / time : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Stats(minted=%d, time=%dms, throughput=%.1f/s)", minted(), totalTime(TimeUnit.MILLISECONDS), throughput());
+        }
+    }
+
+    private static final class SigningException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        SigningException(JOSEException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized JOSEException getCause() {
+            return (JOSEException) super.getCause();
+        }
+    }
+
+}
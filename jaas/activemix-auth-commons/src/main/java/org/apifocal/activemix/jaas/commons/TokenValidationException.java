@@ -19,14 +19,32 @@ package org.apifocal.activemix.jaas.commons;
  * Exception raised when token fails a validation.
  */
 public class TokenValidationException extends Exception {
-	private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 1L;
 
-	public TokenValidationException(String message) {
+    private final long rejectUntil;
+
+    public TokenValidationException(String message) {
+        this(message, 0L);
+    }
+
+    /**
+     * @param rejectUntil time (in milliseconds) until which the same token is certain to fail again
+     */
+    public TokenValidationException(String message, long rejectUntil) {
         super(message);
+        this.rejectUntil = rejectUntil;
     }
 
     public TokenValidationException(String message, Throwable cause) {
         super(message, cause);
+        this.rejectUntil = 0L;
+    }
+
+    /**
+     * @return time until which the token can be rejected without validating it again, 0 if unknown
+     */
+    public long getRejectUntil() {
+        return rejectUntil;
     }
 
 }
@@ -19,10 +19,42 @@ import com.nimbusds.jose.proc.SecurityContext;
 import com.nimbusds.jwt.JWT;
 
 /**
- * TODO: javadoc
+ * Validator of tokens presented at login.
+ *
+ * Validators declare a relative {@link Cost} so that validator chains can run the cheap checks
+ * first and reject most invalid tokens before any cryptography is done.
  */
 public interface TokenValidator<T extends JWT, C extends SecurityContext> {
 
+    /**
+     * Relative cost classes of validators, cheapest first.
+     */
+    enum Cost {
+        /** Checks of the token structure, e.g. its type or header. */
+        STRUCTURAL,
+        /** Checks of claim values against the clock or configuration. */
+        CLAIMS,
+        /** Checks against in-memory or external state, e.g. revocation lists. */
+        LOOKUP,
+        /** Cryptographic checks, e.g. of the token signature. */
+        CRYPTO
+    }
+
     void validate(T token, C securityContext) throws TokenValidationException;
 
+    /**
+     * @return the cost class of this validator; validators not declaring one are assumed expensive
+     */
+    default Cost cost() {
+        return Cost.CRYPTO;
+    }
+
+    /**
+     * @return true if a token passing this validator is known to come from the issuer it names,
+     *         e.g. because its signature was verified with a key of that issuer
+     */
+    default boolean verifiesIssuer() {
+        return false;
+    }
+
 }
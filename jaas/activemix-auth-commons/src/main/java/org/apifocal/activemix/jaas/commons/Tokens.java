@@ -17,9 +17,16 @@ package org.apifocal.activemix.jaas.commons;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
 import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
 import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
 import java.text.ParseException;
 import java.util.Date;
 import java.util.List;
@@ -32,9 +39,16 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Charsets;
 import com.google.common.base.Strings;
 import com.google.common.io.Resources;
+import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JWSAlgorithm;
-import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.crypto.Ed25519Signer;
 import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.crypto.bc.BouncyCastleProviderSingleton;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.OctetKeyPair;
+import com.nimbusds.jose.util.Base64URL;
 import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.SignedJWT;
 
@@ -113,23 +127,69 @@ public final class Tokens {
     }
 
     public static String createToken(final JWTClaimsSet claims, String privkey, PasswordProvider password) {
-        SignedJWT signedJWT = null;
         try {
-            KeyPair kp = Keys.readKeyPair(privkey, password);
-            if (!"RSA".equals(kp.getPublic().getAlgorithm())) {
-                // TODO: LOG, complain...
-                return null;
-            }
-            RSAPrivateKey rsaKey = kp.getPrivate() instanceof RSAPrivateKey ? (RSAPrivateKey)kp.getPrivate() : null;
-            signedJWT = new SignedJWT(new JWSHeader(JWSAlgorithm.RS256), claims);
-            signedJWT.sign(new RSASSASigner(rsaKey));
-            return signedJWT.serialize();
+            return createToken(claims, Keys.readKeyPair(privkey, password));
+        } catch (Exception e) {
+            LOG.warn(e.getLocalizedMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Creates a token signed with the key in the file; the key is read once for all tokens signed with it.
+     */
+    public static String createToken(final JWTClaimsSet claims, Path privkey, PasswordProvider password) {
+        try {
+            return createToken(claims, Keys.readKeyPair(privkey, password));
         } catch (Exception e) {
             LOG.warn(e.getLocalizedMessage());
         }
         return null;
     }
 
+    private static String createToken(final JWTClaimsSet claims, KeyPair kp) throws Exception {
+        return new TokenMinter(kp).mint(claims);
+    }
+
+    /**
+     * @return the signature algorithm of tokens signed with the key: RS256 for RSA, ES256/384/512 for EC keys
+     *         on P-256/384/521 and EdDSA for Ed25519 keys; {@code null} for keys which cannot sign tokens
+     */
+    public static JWSAlgorithm algorithm(PublicKey key) {
+        if (key instanceof RSAPublicKey) {
+            return JWSAlgorithm.RS256;
+        } else if (key instanceof ECPublicKey) {
+            Curve curve = Curve.forECParameterSpec(((ECPublicKey) key).getParams());
+            return Curve.P_256.equals(curve) ? JWSAlgorithm.ES256
+                : Curve.P_384.equals(curve) ? JWSAlgorithm.ES384
+                : Curve.P_521.equals(curve) ? JWSAlgorithm.ES512
+                : null;
+        } else if (Keys.isEd25519(key)) {
+            return JWSAlgorithm.EdDSA;
+        }
+        return null;
+    }
+
+    /**
+     * @return the signer of tokens with the private key of the pair
+     */
+    public static JWSSigner signer(KeyPair kp) throws JOSEException, GeneralSecurityException {
+        PrivateKey key = kp.getPrivate();
+        if (key instanceof RSAPrivateKey) {
+            return new RSASSASigner((RSAPrivateKey) key);
+        } else if (key instanceof ECPrivateKey) {
+            // keys read by Bouncy Castle report their algorithm as 'ECDSA', which the JDK provider rejects
+            ECDSASigner signer = new ECDSASigner((ECPrivateKey) key);
+            signer.getJCAContext().setProvider(BouncyCastleProviderSingleton.getInstance());
+            return signer;
+        } else if (Keys.isEd25519(key)) {
+            return new Ed25519Signer(new OctetKeyPair.Builder(Curve.Ed25519, Base64URL.encode(Keys.rawEd25519Key(kp.getPublic())))
+                .d(Base64URL.encode(Keys.rawEd25519Key(key)))
+                .build());
+        }
+        throw new JOSEException("Cannot sign tokens with " + key.getAlgorithm() + " keys");
+    }
+
     // Convenient helpers for handling expiration time; functions convert milliseconds to the specified seconds/minutes/hours/days
     public static long seconds(int sec) {
         return 1000L * sec;
@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apifocal.activemix.commons.Settings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.JWT;
+
+/**
+ * Runs a chain of token validators with bounded waiting time.
+ *
+ * Cheap validators run first on the calling thread. Validators of {@link TokenValidator.Cost#CRYPTO}
+ * cost, such as signature checks, run in parallel on a dedicated executor (virtual threads when
+ * the JVM has them); the first failure cancels the checks still running. Each check may run for
+ * 'timeout' milliseconds, or 'timeout.&lt;ValidatorSimpleName&gt;' if set, and only the checks which
+ * ran longer are counted as timed out; checks still queued after that long are given up as well. At most 'maxPending' checks may be queued or running at any time, further logins
+ * are rejected right away rather than piling up on the broker transport threads. Such failures,
+ * which tell nothing about the token, are raised as {@link ValidationUnavailableException}.
+ * Outcomes and times are counted per validator.
+ */
+public class ValidationEngine {
+
+    public static final long DEFAULT_TIMEOUT = Tokens.seconds(5);
+    public static final int DEFAULT_MAX_PENDING = 1024;
+
+    private static final Logger LOG = LoggerFactory.getLogger(ValidationEngine.class);
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    private final ExecutorService executor;
+    private final Semaphore pending;
+    private final int maxPending;
+    private final long timeout;
+    private final Settings timeouts;
+    private final ConcurrentMap<String, Stats> stats = new ConcurrentHashMap<>();
+
+    public ValidationEngine(Settings settings) {
+        this(settings.intOption("threads", 2 * Runtime.getRuntime().availableProcessors()),
+            settings.intOption("maxPending", DEFAULT_MAX_PENDING),
+            settings.durationOption("timeout", DEFAULT_TIMEOUT),
+            settings.subset("timeout"));
+    }
+
+    public ValidationEngine(int threads, int maxPending, long timeout) {
+        this(threads, maxPending, timeout, new Settings(Collections.emptyMap()));
+    }
+
+    private ValidationEngine(int threads, int maxPending, long timeout, Settings timeouts) {
+        this.executor = newExecutor(threads);
+        this.pending = new Semaphore(maxPending);
+        this.maxPending = maxPending;
+        this.timeout = timeout;
+        this.timeouts = timeouts;
+    }
+
+    @SuppressWarnings("rawtypes")
+    public <T extends JWT, C extends SecurityContext> void validate(List<TokenValidator> validators, T token, C securityContext)
+        throws TokenValidationException {
+        validate(validators, token, securityContext, new ArrayList<>());
+    }
+
+    /**
+     * @param passed receives the validators passed by the token before it failed one, if any; validators
+     *        still running when another one fails are not included
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public <T extends JWT, C extends SecurityContext> void validate(List<TokenValidator> validators, T token, C securityContext,
+        Collection<TokenValidator> passed) throws TokenValidationException {
+
+        List<TokenValidator> deferred = new ArrayList<>();
+        for (TokenValidator validator : validators) {
+            if (isExpensive(validator)) {
+                deferred.add(validator);
+            } else {
+                run(validator, token, securityContext);
+                passed.add(validator);
+            }
+        }
+        if (deferred.isEmpty()) {
+            return;
+        }
+
+        BlockingQueue<Future<TokenValidator>> completed = new LinkedBlockingQueue<>();
+        Map<Check, TokenValidator> running = new ConcurrentHashMap<>();
+        try {
+            for (TokenValidator validator : deferred) {
+                if (!pending.tryAcquire()) {
+                    throw new ValidationUnavailableException("Too many pending token validations");
+                }
+                Check check = new Check(() -> {
+                    run(validator, token, securityContext);
+                    return validator;
+                }, completed, timeout(validator));
+                try {
+                    executor.execute(check);
+                    running.put(check, validator);
+                } catch (RejectedExecutionException e) {
+                    // never ran, never done
+                    pending.release();
+                    throw new ValidationUnavailableException("Token validation rejected", e);
+                }
+            }
+
+            while (!running.isEmpty()) {
+                Future<TokenValidator> done = completed.poll(untilTimeout(running), TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    // some check is due, or one started since and has time left
+                    continue;
+                }
+                TokenValidator validator = running.remove(done);
+                done.get();
+                passed.add(validator);
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof TokenValidationException) {
+                throw (TokenValidationException) cause;
+            }
+            throw new ValidationUnavailableException("Token validation failed", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ValidationUnavailableException("Token validation interrupted", e);
+        } finally {
+            // short-circuit, nothing left running is of any use anymore
+            running.keySet().forEach(future -> future.cancel(true));
+        }
+    }
+
+    /**
+     * @return nanoseconds until the next running or queued check is due
+     * @throws ValidationUnavailableException if a check is due, counted as timed out for its validator if it was running
+     */
+    @SuppressWarnings("rawtypes")
+    private long untilTimeout(Map<Check, TokenValidator> running) throws ValidationUnavailableException {
+        long now = System.nanoTime();
+        long wait = Long.MAX_VALUE;
+        List<String> overran = new ArrayList<>();
+        boolean queued = false;
+        for (Map.Entry<Check, TokenValidator> entry : running.entrySet()) {
+            Check check = entry.getKey();
+            long left = check.remaining(now);
+            if (check.isDone()) {
+                // waiting to be taken from the completed checks
+                wait = 0L;
+            } else if (left > 0) {
+                wait = Math.min(wait, left);
+            } else if (check.isStarted()) {
+                stats(entry.getValue()).timedOut.increment();
+                overran.add(entry.getValue().getClass().getName() + " after " + check.timeout + "ms");
+            } else {
+                queued = true;
+            }
+        }
+        if (!overran.isEmpty()) {
+            throw new ValidationUnavailableException("Token validation timed out in " + String.join(", ", overran));
+        }
+        if (queued) {
+            throw new ValidationUnavailableException("Token validation timed out waiting for a validator thread");
+        }
+        return wait;
+    }
+
+    private long timeout(TokenValidator<?, ?> validator) {
+        return timeouts.durationOption(validator.getClass().getSimpleName(), timeout);
+    }
+
+    /**
+     * @return number of validations queued or running
+     */
+    public int pending() {
+        return maxPending - pending.availablePermits();
+    }
+
+    public Map<String, Stats> stats() {
+        return Collections.unmodifiableMap(stats);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private void run(TokenValidator validator, JWT token, SecurityContext securityContext) throws TokenValidationException {
+        Stats counters = stats(validator);
+        long start = System.nanoTime();
+        try {
+            validator.validate(token, securityContext);
+            counters.passed.increment();
+        } catch (TokenValidationException | RuntimeException e) {
+            counters.failed.increment();
+            throw e;
+        } finally {
+            counters.nanos.add(System.nanoTime() - start);
+        }
+    }
+
+    private Stats stats(TokenValidator<?, ?> validator) {
+        return stats.computeIfAbsent(validator.getClass().getName(), name -> new Stats());
+    }
+
+    private static boolean isExpensive(TokenValidator<?, ?> validator) {
+        return validator.cost() == TokenValidator.Cost.CRYPTO;
+    }
+
+    private static ExecutorService newExecutor(int threads) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            LOG.debug("Validating tokens on virtual threads");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            LOG.debug("Validating tokens on {} threads", threads);
+            ThreadFactory threadFactory = runnable -> {
+                Thread thread = new Thread(runnable, "activemix-token-validator-" + THREADS.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+            return Executors.newFixedThreadPool(threads, threadFactory);
+        }
+    }
+
+    /**
+     * Validation which gives back its pending permit once done, including when cancelled before it could run.
+     * Its timeout counts from the time it starts running, and until then from the time it was queued.
+     */
+    @SuppressWarnings("rawtypes")
+    private final class Check extends FutureTask<TokenValidator> {
+        private final BlockingQueue<Future<TokenValidator>> completed;
+        private final long timeout;
+        private final long queued = System.nanoTime();
+        private volatile long started;
+        private volatile boolean running;
+
+        private Check(Callable<TokenValidator> validation, BlockingQueue<Future<TokenValidator>> completed, long timeout) {
+            super(validation);
+            this.completed = completed;
+            this.timeout = timeout;
+        }
+
+        @Override
+        public void run() {
+            started = System.nanoTime();
+            running = true;
+            super.run();
+        }
+
+        private boolean isStarted() {
+            return running;
+        }
+
+        private long remaining(long now) {
+            return (running ? started : queued) + TimeUnit.MILLISECONDS.toNanos(timeout) - now;
+        }
+
+        @Override
+        protected void done() {
+            pending.release();
+            completed.add(this);
+        }
+    }
+
+    /**
+     * Validation counters of a validator.
+     */
+    public static final class Stats {
+        private final LongAdder passed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder timedOut = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        public long passed() {
+            return passed.sum();
+        }
+
+        public long failed() {
+            return failed.sum();
+        }
+
+        public long timedOut() {
+            return timedOut.sum();
+        }
+
+        public long totalTime(TimeUnit unit) {
+            return unit.convert(nanos.sum(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public String toString() {
+            return "Stats(passed=" + passed() + ", failed=" + failed() + ", timedOut=" + timedOut()
+                + ", time=" + totalTime(TimeUnit.MILLISECONDS) + "ms)";
+        }
+    }
+
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons;
+
+/**
+ * Exception raised when a token could not be validated at all, e.g. because the keys could not be
+ * read or the validation engine is overloaded. It says nothing about the token itself, which may
+ * well pass once the cause is gone, so such failures are neither cached nor counted against anybody.
+ */
+public class ValidationUnavailableException extends TokenValidationException {
+    private static final long serialVersionUID = 1L;
+
+    public ValidationUnavailableException(String message) {
+        super(message);
+    }
+
+    public ValidationUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
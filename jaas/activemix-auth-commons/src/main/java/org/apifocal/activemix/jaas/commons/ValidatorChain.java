@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Helper ordering validators by their declared cost.
+ */
+public final class ValidatorChain {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ValidatorChain.class);
+
+    /**
+     * Orders validators cheapest first, keeping the configured order of validators of equal cost.
+     * Repeated validators of the same class are dropped, as they are configured the same way.
+     */
+    @SuppressWarnings("rawtypes")
+    public static List<TokenValidator> of(List<TokenValidator> validators) {
+        Set<Class<?>> seen = new HashSet<>();
+        List<TokenValidator> chain = new ArrayList<>(validators.size());
+        for (TokenValidator validator : validators) {
+            if (seen.add(validator.getClass())) {
+                chain.add(validator);
+            } else {
+                LOG.warn("Ignoring duplicate validator {}", validator.getClass().getName());
+            }
+        }
+        // List.sort is stable
+        chain.sort(Comparator.comparing(TokenValidator::cost));
+        LOG.debug("Validator chain: {}", chain);
+        return Collections.unmodifiableList(chain);
+    }
+
+    private ValidatorChain() {
+        // utility
+    }
+
+}
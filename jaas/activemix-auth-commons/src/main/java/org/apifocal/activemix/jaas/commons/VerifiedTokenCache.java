@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons;
+
+import java.security.Principal;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apifocal.activemix.commons.Settings;
+
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.nimbusds.jwt.JWTClaimsSet;
+
+/**
+ * Bounded cache of successfully validated tokens.
+ *
+ * Entries are keyed by a SHA-256 digest of the raw token and the issuer context it was validated
+ * against, so the token itself is never retained. An entry is dropped no later than the 'exp' claim
+ * of the cached token, or after the configured 'ttl' (milliseconds), whichever comes first.
+ */
+public class VerifiedTokenCache {
+
+    public static final long DEFAULT_SIZE = 10000L;
+    public static final long DEFAULT_TTL = Tokens.minutes(5);
+
+    private final Cache<HashCode, Entry> cache;
+    private final long ttl;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public VerifiedTokenCache(Settings settings) {
+        this(settings.sizeOption("size", DEFAULT_SIZE),
+            settings.durationOption("ttl", DEFAULT_TTL));
+    }
+
+    public VerifiedTokenCache(long size, long ttl) {
+        this.ttl = ttl;
+        this.cache = CacheBuilder.newBuilder()
+            .maximumSize(size)
+            .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+            .removalListener(this::onRemoval)
+            .build();
+    }
+
+    public static HashCode key(String token, String issuer) {
+        return Hashing.sha256().newHasher()
+            .putUnencodedChars(Strings.nullToEmpty(issuer))
+            .putByte((byte)0)
+            .putUnencodedChars(token)
+            .hash();
+    }
+
+    /**
+     * @return the claims of a previously validated token, or {@code null} if absent or expired
+     */
+    public JWTClaimsSet get(HashCode key) {
+        Entry entry = lookup(key);
+        return entry != null ? entry.claims : null;
+    }
+
+    /**
+     * @return the claims and principals of a previously validated token, or {@code null} if absent or expired
+     */
+    public Entry lookup(HashCode key) {
+        Entry entry = cache.getIfPresent(key);
+        if (entry != null && entry.expires <= CoarseClock.millis()) {
+            cache.invalidate(key);
+            evictions.increment();
+            entry = null;
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry;
+    }
+
+    public void put(HashCode key, JWTClaimsSet claims) {
+        put(key, claims, Collections.emptySet());
+    }
+
+    /**
+     * Caches a validated token together with the principals its claims map to.
+     */
+    public void put(HashCode key, JWTClaimsSet claims, Set<Principal> principals) {
+        long now = CoarseClock.millis();
+        Date exp = claims.getExpirationTime();
+        long expires = exp != null ? Math.min(exp.getTime(), now + ttl) : now + ttl;
+        if (expires > now) {
+            cache.put(key, new Entry(claims, Collections.unmodifiableSet(principals), expires));
+        }
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "VerifiedTokenCache(size=" + size() + ", hits=" + hits() + ", misses=" + misses() + ", evictions=" + evictions() + ")";
+    }
+
+    private void onRemoval(RemovalNotification<HashCode, Entry> notification) {
+        if (notification.wasEvicted()) {
+            evictions.increment();
+        }
+    }
+
+    /**
+     * A validated token.
+     */
+    public static final class Entry {
+        private final JWTClaimsSet claims;
+        private final Set<Principal> principals;
+        private final long expires;
+
+        Entry(JWTClaimsSet claims, Set<Principal> principals, long expires) {
+            this.claims = claims;
+            this.principals = principals;
+            this.expires = expires;
+        }
+
+        public JWTClaimsSet getClaims() {
+            return claims;
+        }
+
+        public Set<Principal> getPrincipals() {
+            return principals;
+        }
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons.mappers;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+
+import java.security.Principal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+
+import org.apifocal.activemix.commons.Settings;
+import org.apifocal.activemix.jaas.commons.Principals;
+import org.apifocal.activemix.jaas.commons.ClaimMapper;
+
+/**
+ * Mapper of the access privileges claim ('acl' unless set by the 'claim' property) from token.
+ * Tokens without the claim yield no principal.
+ */
+public class AclMapper implements ClaimMapper {
+
+    public static final String DEFAULT_CLAIM = "acl";
+
+    private final String claim;
+
+    public AclMapper(Settings settings) {
+        this.claim = settings.stringOption("claim", DEFAULT_CLAIM);
+    }
+
+    @Override
+    public Set<Principal> map(JWTClaimsSet claimsSet) {
+        Object acl = claimsSet.getClaim(claim);
+        return acl != null ? Collections.singleton(Principals.acl(acl.toString())) : Collections.emptySet();
+    }
+
+    @Override
+    public void map(JWTClaimsSet claimsSet, Collection<? super Principal> principals) {
+        Object acl = claimsSet.getClaim(claim);
+        if (acl != null) {
+            principals.add(Principals.acl(acl.toString()));
+        }
+    }
+
+}
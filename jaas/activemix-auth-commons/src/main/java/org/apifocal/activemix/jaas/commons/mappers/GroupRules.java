@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons.mappers;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.Principal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.activemq.jaas.GroupPrincipal;
+import org.apifocal.activemix.commons.FileWatcher;
+import org.apifocal.activemix.commons.Settings;
+import org.apifocal.activemix.jaas.commons.Principals;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+
+/**
+ * Group membership rules read from a properties file, compiled into lookup tables.
+ *
+ * The file has the format of the ActiveMQ groups file, {@code group=member,member,...}. A member is
+ * either a plain user name, matched against the 'sub' claim, or a {@code claim:value} pair, e.g.
+ * {@code admins=bob,iss:acme,acl:admin}. Claims holding arrays, like 'aud', match if any element does.
+ *
+ * Rules are compiled once into per-claim hash tables of the pooled group principals. Once watched,
+ * a changed file is compiled in the background and the tables swapped in one step; mapping claims
+ * never touches the file system. Rules are shared per file.
+ */
+public final class GroupRules {
+
+    public static final String SUBJECT_CLAIM = "sub";
+
+    private static final Logger LOG = LoggerFactory.getLogger(GroupRules.class);
+    private static final ConcurrentMap<Path, GroupRules> RULES = new ConcurrentHashMap<>();
+
+    private final Path file;
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private volatile Map<String, Map<String, Set<Principal>>> table;
+    private volatile FileWatcher watcher;
+
+    GroupRules(Path file) throws IOException {
+        this.file = file;
+        this.table = compile(file);
+    }
+
+    /**
+     * @return the rules of the given file, read on first use
+     */
+    public static GroupRules forFile(Path file) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        GroupRules rules = RULES.get(key);
+        if (rules == null) {
+            GroupRules loaded = new GroupRules(key);
+            rules = RULES.putIfAbsent(key, loaded);
+            rules = rules != null ? rules : loaded;
+        }
+        return rules;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Adds the groups the claims are member of to the given collection.
+     */
+    public void map(JWTClaimsSet claims, Collection<? super Principal> principals) {
+        Map<String, Map<String, Set<Principal>>> current = table;
+        for (Map.Entry<String, Map<String, Set<Principal>>> rule : current.entrySet()) {
+            Object value = claims.getClaim(rule.getKey());
+            if (value instanceof Collection) {
+                for (Object element : (Collection<?>) value) {
+                    add(rule.getValue(), element, principals);
+                }
+            } else {
+                add(rule.getValue(), value, principals);
+            }
+        }
+    }
+
+    /**
+     * Compiles the file again and replaces the rules in use.
+     */
+    public void reload() {
+        try {
+            table = compile(file);
+            LOG.info("Reloaded group rules from {}", file);
+        } catch (IOException e) {
+            // keep the rules in use rather than dropping all group memberships
+            LOG.warn("Couldn't reload group rules from {}, keeping previous rules: {}", file, e.getMessage());
+            return;
+        }
+        listeners.forEach(Runnable::run);
+    }
+
+    /**
+     * Registers a listener called after the rules were reloaded.
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Starts watching the file for changes, unless already watched.
+     */
+    public synchronized void watch(long pollInterval) {
+        if (watcher == null) {
+            Path name = file.getFileName();
+            FileWatcher fileWatcher = new FileWatcher(file.getParent(), changed -> changed.getFileName().equals(name),
+                changed -> reload(), pollInterval);
+            fileWatcher.start();
+            watcher = fileWatcher;
+        }
+    }
+
+    public synchronized void unwatch() {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
+    }
+
+    public boolean isWatched() {
+        return watcher != null;
+    }
+
+    private static void add(Map<String, Set<Principal>> groups, Object value, Collection<? super Principal> principals) {
+        if (value != null) {
+            Set<Principal> matched = groups.get(value.toString());
+            if (matched != null) {
+                principals.addAll(matched);
+            }
+        }
+    }
+
+    static Map<String, Map<String, Set<Principal>>> compile(Path file) throws IOException {
+        Map<String, Map<String, Set<Principal>>> table = new HashMap<>();
+        Settings.invert(Settings.parse(Settings.loadProperties(file))).forEach((member, groups) -> {
+            if (member.isEmpty()) {
+                return;
+            }
+            int separator = member.indexOf(':');
+            String claim = separator > 0 ? member.substring(0, separator) : SUBJECT_CLAIM;
+            String value = separator > 0 ? member.substring(separator + 1) : member;
+            Set<Principal> principals = table.computeIfAbsent(claim, c -> new HashMap<>())
+                .computeIfAbsent(value, v -> new HashSet<>());
+            groups.forEach(group -> principals.add(Principals.intern(GroupPrincipal.class, group, GroupPrincipal::new)));
+        });
+
+        // freeze, the tables are read by concurrent logins
+        Map<String, Map<String, Set<Principal>>> frozen = new HashMap<>();
+        table.forEach((claim, values) -> {
+            Map<String, Set<Principal>> frozenValues = new HashMap<>();
+            values.forEach((value, groups) -> frozenValues.put(value, Collections.unmodifiableSet(groups)));
+            frozen.put(claim, Collections.unmodifiableMap(frozenValues));
+        });
+        return Collections.unmodifiableMap(frozen);
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons.mappers;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.Principal;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apifocal.activemix.commons.FileWatcher;
+import org.apifocal.activemix.commons.Settings;
+import org.apifocal.activemix.jaas.commons.ClaimMapper;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+
+/**
+ * Mapper of token claims to ActiveMQ group principals, following the {@link GroupRules} in the
+ * 'file' property. The file is watched for changes unless 'watch' is set to false.
+ */
+public class GroupsMapper implements ClaimMapper {
+
+    private final GroupRules rules;
+
+    public GroupsMapper(Settings settings) {
+        Path file = settings.stringOption("file")
+            .map(Paths::get)
+            .orElseThrow(() -> new IllegalStateException("GroupsMapper requires 'file' property pointing to groups file"));
+        try {
+            this.rules = GroupRules.forFile(file);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read groups file " + file, e);
+        }
+        if (settings.booleanOption("watch", true)) {
+            rules.watch(settings.durationOption("pollInterval", FileWatcher.DEFAULT_POLL_INTERVAL));
+        }
+    }
+
+    public GroupRules getRules() {
+        return rules;
+    }
+
+    @Override
+    public Set<Principal> map(JWTClaimsSet claimsSet) {
+        Set<Principal> principals = new LinkedHashSet<>();
+        rules.map(claimsSet, principals);
+        return principals;
+    }
+
+    @Override
+    public void map(JWTClaimsSet claimsSet, Collection<? super Principal> principals) {
+        rules.map(claimsSet, principals);
+    }
+
+}
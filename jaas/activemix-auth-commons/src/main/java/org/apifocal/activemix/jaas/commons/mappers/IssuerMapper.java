@@ -18,11 +18,12 @@ package org.apifocal.activemix.jaas.commons.mappers;
 import com.nimbusds.jwt.JWTClaimsSet;
 
 import java.security.Principal;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Set;
 
 import org.apifocal.activemix.commons.Settings;
-import org.apifocal.activemix.jaas.commons.IssuerPrincipal;
+import org.apifocal.activemix.jaas.commons.Principals;
 import org.apifocal.activemix.jaas.commons.ClaimMapper;
 
 /**
@@ -36,7 +37,12 @@ public class IssuerMapper implements ClaimMapper {
 
     @Override
     public Set<Principal> map(JWTClaimsSet claimsSet) {
-        return Collections.singleton(new IssuerPrincipal(claimsSet.getIssuer()));
+        return Collections.singleton(Principals.issuer(claimsSet.getIssuer()));
+    }
+
+    @Override
+    public void map(JWTClaimsSet claimsSet, Collection<? super Principal> principals) {
+        principals.add(Principals.issuer(claimsSet.getIssuer()));
     }
 
 }
@@ -18,12 +18,13 @@ package org.apifocal.activemix.jaas.commons.mappers;
 import com.nimbusds.jwt.JWTClaimsSet;
 
 import java.security.Principal;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Set;
 
 import org.apifocal.activemix.commons.Settings;
 
-import org.apifocal.activemix.jaas.commons.SubjectPrincipal;
+import org.apifocal.activemix.jaas.commons.Principals;
 import org.apifocal.activemix.jaas.commons.ClaimMapper;
 
 /**
@@ -37,7 +38,12 @@ public class SubjectMapper implements ClaimMapper {
 
     @Override
     public Set<Principal> map(JWTClaimsSet claimsSet) {
-        return Collections.singleton(new SubjectPrincipal(claimsSet.getSubject()));
+        return Collections.singleton(Principals.subject(claimsSet.getSubject()));
+    }
+
+    @Override
+    public void map(JWTClaimsSet claimsSet, Collection<? super Principal> principals) {
+        principals.add(Principals.subject(claimsSet.getSubject()));
     }
 
 }
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons.verifiers;
+
+import java.text.ParseException;
+
+import org.apifocal.activemix.commons.Settings;
+import org.apifocal.activemix.jaas.commons.CoarseClock;
+import org.apifocal.activemix.jaas.commons.TokenValidationException;
+import org.apifocal.activemix.jaas.commons.TokenValidator;
+import org.apifocal.activemix.jaas.commons.Tokens;
+
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.JWT;
+import com.nimbusds.jwt.JWTClaimsSet;
+
+/**
+ * Base of validators checking token claims.
+ *
+ * Time based checks tolerate a clock 'skew' (milliseconds, 60 seconds by default) between the
+ * token issuer and the broker.
+ */
+public abstract class AbstractClaimsValidator implements TokenValidator<JWT, SecurityContext> {
+
+    public static final long DEFAULT_SKEW = Tokens.seconds(60);
+
+    protected final long skew;
+
+    protected AbstractClaimsValidator(Settings settings) {
+        this.skew = settings.durationOption("skew", DEFAULT_SKEW);
+    }
+
+    @Override
+    public void validate(JWT token, SecurityContext securityContext) throws TokenValidationException {
+        try {
+            validate(token.getJWTClaimsSet(), CoarseClock.millis());
+        } catch (ParseException e) {
+            throw new TokenValidationException("Invalid token claims", e);
+        }
+    }
+
+    protected abstract void validate(JWTClaimsSet claims, long now) throws TokenValidationException;
+
+    @Override
+    public Cost cost() {
+        return Cost.CLAIMS;
+    }
+
+}
@@ -15,53 +15,68 @@
  */
 package org.apifocal.activemix.jaas.commons.verifiers;
 
-import java.security.Key;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import org.apifocal.activemix.jaas.commons.Keys;
 import org.apifocal.activemix.jaas.commons.TokenValidationException;
 import org.apifocal.activemix.jaas.commons.TokenValidator;
+import org.apifocal.activemix.jaas.commons.ValidationUnavailableException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JWSAlgorithm;
 import com.nimbusds.jose.JWSHeader;
-import com.nimbusds.jose.JWSVerifier;
 import com.nimbusds.jose.KeySourceException;
-import com.nimbusds.jose.crypto.factories.DefaultJWSVerifierFactory;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.KeyType;
+import com.nimbusds.jose.jwk.KeyUse;
 import com.nimbusds.jose.jwk.source.JWKSource;
-import com.nimbusds.jose.proc.JWSVerificationKeySelector;
 import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jose.util.Base64URL;
 import com.nimbusds.jwt.SignedJWT;
 
 /**
  * Abstract Validator of token signer using a variety of JWKSource(s) information.
+ *
+ * Verifiers are built once per key (see {@link JWSVerifiers}) and the key which last verified a
+ * token of an issuer is tried first by this validator for the next token of that issuer, for as
+ * long as the issuer still has that key. Tokens carrying a 'kid' or 'x5t#S256' header are only
+ * checked against the key with that fingerprint.
  */
 public abstract class AbstractSignerValidator implements TokenValidator<SignedJWT, SecurityContext> {
 
     private static final Logger LOG = LoggerFactory.getLogger(AbstractSignerValidator.class);
-    protected JWKSource<SecurityContext> jwkSource;
+
+    protected volatile JWKSource<SecurityContext> jwkSource;
+
+    private final ConcurrentMap<String, JWK> lastKeys = new ConcurrentHashMap<>();
 
     @Override
     public void validate(SignedJWT token, SecurityContext securityContext) throws TokenValidationException {
         JWSHeader header = token.getHeader();
-        JWSAlgorithm algorithm = header.getAlgorithm();
+        String issuer = issuerOf(securityContext);
 
         try {
-            List<Key> keys = new JWSVerificationKeySelector<>(algorithm, getJwkSource())
-                .selectJWSKeys(header, securityContext);
+            List<JWK> keys = order(issuer, selectKeys(header, securityContext));
 
-            DefaultJWSVerifierFactory verifierFactory = new DefaultJWSVerifierFactory();
             boolean success = false;
-            for (Key key : keys) {
+            for (JWK key : keys) {
                 try {
-                    JWSVerifier jwsVerifier = verifierFactory.createJWSVerifier(header, key);
-                    jwsVerifier.verify(header, token.getSigningInput(), token.getSignature());
-                    LOG.debug("Signature verification successful with key {}", key.getFormat());
-                    success = true;
-                    break;
+                    if (JWSVerifiers.get(key, header).verify(header, token.getSigningInput(), token.getSignature())) {
+                        LOG.debug("Signature verification successful with key {}", key.getKeyID());
+                        lastKeys.put(issuer, key);
+                        success = true;
+                        break;
+                    }
+                    LOG.debug("Signature not verified with key {}", key.getKeyID());
                 } catch (JOSEException e) {
-                    LOG.info("Invalid signature found", e);
+                    LOG.debug("Cannot verify signature with key {}: {}", key.getKeyID(), e.getMessage());
                 }
             }
 
@@ -69,9 +84,85 @@ public abstract class AbstractSignerValidator implements TokenValidator<SignedJW
                 throw new TokenValidationException("Could not verify signature. No matching keys found.");
             }
         } catch (KeySourceException e) {
-            throw new TokenValidationException("Invalid token signature", e);
+            throw new ValidationUnavailableException("Cannot read token signing keys", e);
+        }
+    }
+
+    @Override
+    public Cost cost() {
+        return Cost.CRYPTO;
+    }
+
+    @Override
+    public boolean verifiesIssuer() {
+        return true;
+    }
+
+    /**
+     * Selects the keys which may have signed a token. When the header identifies the key, only that
+     * key is returned, unless the issuer has no such key, in which case all keys are candidates.
+     */
+    protected List<JWK> selectKeys(JWSHeader header, SecurityContext securityContext) throws KeySourceException {
+        String keyId = keyId(header);
+        if (keyId != null) {
+            List<JWK> keys = getJwkSource().get(new JWKSelector(matcher(header.getAlgorithm(), keyId)), securityContext);
+            if (!keys.isEmpty()) {
+                return keys;
+            }
+            LOG.debug("No key {} found, trying all keys", keyId);
         }
+        return getJwkSource().get(new JWKSelector(matcher(header.getAlgorithm(), null)), securityContext);
     }
 
     protected abstract JWKSource<SecurityContext> getJwkSource();
+
+    /**
+     * @return the key ID from the header, or the fingerprint of the key from its SHA-256 thumbprint
+     */
+    static String keyId(JWSHeader header) {
+        if (header.getKeyID() != null) {
+            return header.getKeyID();
+        }
+        Base64URL thumbprint = header.getX509CertSHA256Thumbprint();
+        return thumbprint != null ? Keys.fingerprint(thumbprint.decode(), Keys.defaultAlgorithm()) : null;
+    }
+
+    private static JWKMatcher matcher(JWSAlgorithm algorithm, String keyId) {
+        return new JWKMatcher.Builder()
+            .keyType(KeyType.forAlgorithm(algorithm))
+            .keyID(keyId)
+            .keyUses(KeyUse.SIGNATURE, null)
+            .algorithms(algorithm, null)
+            .build();
+    }
+
+    /**
+     * @return the keys with the one which last verified a token of the issuer first
+     */
+    private List<JWK> order(String issuer, List<JWK> keys) {
+        JWK last = lastKeys.get(issuer);
+        if (last == null || (!keys.isEmpty() && keys.get(0) == last)) {
+            return keys;
+        }
+        for (int i = 1; i < keys.size(); i++) {
+            if (keys.get(i) == last) {
+                List<JWK> ordered = new ArrayList<>(keys.size());
+                ordered.add(last);
+                ordered.addAll(keys.subList(0, i));
+                ordered.addAll(keys.subList(i + 1, keys.size()));
+                return ordered;
+            }
+        }
+        // not a candidate for this token, or gone with a reload, which creates new key instances
+        lastKeys.remove(issuer, last);
+        return keys;
+    }
+
+    private static String issuerOf(SecurityContext securityContext) {
+        if (securityContext instanceof TokenSecurityContext) {
+            return ((TokenSecurityContext) securityContext).getIssuer().orElse("");
+        }
+        return "";
+    }
+
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons.verifiers;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apifocal.activemix.commons.Settings;
+import org.apifocal.activemix.jaas.commons.TokenValidationException;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+
+/**
+ * Validator accepting only tokens intended for one of the configured 'audience' values
+ * (comma separated). Tokens without 'aud' claim are accepted if 'required' is set to false.
+ */
+public class AudienceValidator extends AbstractClaimsValidator {
+
+    private final Set<String> audience;
+    private final boolean required;
+
+    public AudienceValidator(Settings settings) {
+        super(settings);
+        List<String> values = settings.listOption("audience");
+        if (values.isEmpty()) {
+            throw new IllegalStateException("AudienceValidator requires 'audience' property");
+        }
+        this.audience = Collections.unmodifiableSet(new HashSet<>(values));
+        this.required = settings.booleanOption("required", true);
+    }
+
+    @Override
+    protected void validate(JWTClaimsSet claims, long now) throws TokenValidationException {
+        List<String> tokenAudience = claims.getAudience();
+        if (tokenAudience == null || tokenAudience.isEmpty()) {
+            if (required) {
+                throw new TokenValidationException("Token has no audience", Long.MAX_VALUE);
+            }
+            return;
+        }
+        for (String value : tokenAudience) {
+            if (audience.contains(value)) {
+                return;
+            }
+        }
+        throw new TokenValidationException("Token not intended for " + audience, Long.MAX_VALUE);
+    }
+
+}
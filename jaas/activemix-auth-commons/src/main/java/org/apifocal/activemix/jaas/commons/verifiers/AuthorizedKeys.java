@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons.verifiers;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.KeyType;
+
+/**
+ * Immutable, indexed snapshot of the keys in an authorized keys file.
+ *
+ * Keys are indexed by key type and by key ID (the key fingerprint) as well as by JWK thumbprint,
+ * so that selecting keys for a token is a map lookup rather than a scan of the file. Large files
+ * are read and indexed in parallel, see {@link SshAuthorizedKeysSet}.
+ */
+public final class AuthorizedKeys {
+
+    public static final AuthorizedKeys EMPTY = new AuthorizedKeys(null, 0L, Collections.emptyList());
+
+    private static final Logger LOG = LoggerFactory.getLogger(AuthorizedKeys.class);
+    private static final int PARALLEL_THRESHOLD = 1000;
+
+    private final File file;
+    private final long lastModified;
+    private final List<JWK> keys;
+    private final Map<KeyType, List<JWK>> byType = new HashMap<>();
+    private final Map<String, JWK> byId = new HashMap<>();
+
+    AuthorizedKeys(File file, long lastModified, List<JWK> keys) {
+        this.file = file;
+        this.lastModified = lastModified;
+        this.keys = Collections.unmodifiableList(keys);
+
+        String[] thumbprints = thumbprints(keys);
+        for (int i = 0; i < thumbprints.length; i++) {
+            JWK key = keys.get(i);
+            byType.computeIfAbsent(key.getKeyType(), t -> new ArrayList<>()).add(key);
+            if (key.getKeyID() != null) {
+                byId.put(key.getKeyID(), key);
+            }
+            if (thumbprints[i] != null) {
+                byId.put(thumbprints[i], key);
+            }
+        }
+    }
+
+    private static String[] thumbprints(List<JWK> keys) {
+        // a thumbprint hashes the JSON form of the key, worth spreading over cores for large files
+        String[] thumbprints = new String[keys.size()];
+        IntStream indexes = IntStream.range(0, thumbprints.length);
+        (thumbprints.length > PARALLEL_THRESHOLD ? indexes.parallel() : indexes).forEach(i -> {
+            try {
+                thumbprints[i] = keys.get(i).computeThumbprint().toString();
+            } catch (JOSEException e) {
+                LOG.debug("Cannot compute thumbprint of key {}", keys.get(i).getKeyID());
+            }
+        });
+        return thumbprints;
+    }
+
+    /**
+     * Loads and indexes the keys in the given file; a missing file yields an empty set.
+     */
+    public static AuthorizedKeys load(File file) throws IOException {
+        long lastModified = file.lastModified();
+        if (lastModified == 0L || !file.isFile()) {
+            return EMPTY;
+        }
+        return new AuthorizedKeys(file, lastModified, SshAuthorizedKeysSet.read(file));
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public List<JWK> getKeys() {
+        return keys;
+    }
+
+    public boolean isEmpty() {
+        return keys.isEmpty();
+    }
+
+    /**
+     * @return the key with the given key ID or thumbprint, or {@code null}
+     */
+    public JWK get(String keyId) {
+        return keyId != null ? byId.get(keyId) : null;
+    }
+
+    /**
+     * @return true if the file backing this snapshot changed since it was loaded
+     */
+    public boolean isStale() {
+        return file != null && file.lastModified() != lastModified;
+    }
+
+    public List<JWK> select(JWKSelector selector) {
+        JWKMatcher matcher = selector.getMatcher();
+        Set<KeyType> types = matcher.getKeyTypes();
+        Set<String> ids = matcher.getKeyIDs();
+        List<JWK> result = new ArrayList<>();
+
+        if (ids != null && !ids.isEmpty()) {
+            // the id may be a thumbprint rather than the key ID, so only the key type is checked
+            for (String id : ids) {
+                JWK key = get(id);
+                if (key != null && (types == null || types.contains(key.getKeyType()))) {
+                    result.add(key);
+                }
+            }
+            return result;
+        }
+
+        List<JWK> candidates = types != null && types.size() == 1
+            ? byType.getOrDefault(types.iterator().next(), Collections.emptyList())
+            : keys;
+        for (JWK key : candidates) {
+            if (matcher.matches(key)) {
+                result.add(key);
+            }
+        }
+        return result;
+    }
+
+}
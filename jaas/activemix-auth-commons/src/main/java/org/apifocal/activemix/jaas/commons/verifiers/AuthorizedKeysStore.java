@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons.verifiers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apifocal.activemix.commons.FileWatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resident store of the authorized keys of all issuers in a keys directory.
+ *
+ * Each {@code <issuer>.keys} file is parsed once and kept as an indexed {@link AuthorizedKeys}
+ * snapshot; a snapshot is only replaced when the file backing it changes. Stores are shared
+ * per directory, so all validators pointing to the same directory use the same keys.
+ *
+ * Once {@link #watch(long) watched}, changed files are re-read in the background and the snapshot
+ * of the issuer is swapped in one step; logins keep using the previous snapshot meanwhile.
+ * Without a watcher, a changed file is re-read by the first login that notices the change. Either
+ * way, listeners are called once the keys of a known issuer were replaced.
+ */
+public final class AuthorizedKeysStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AuthorizedKeysStore.class);
+    private static final ConcurrentMap<File, AuthorizedKeysStore> STORES = new ConcurrentHashMap<>();
+
+    private final File directory;
+    private final ConcurrentMap<String, AuthorizedKeys> issuers = new ConcurrentHashMap<>();
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private volatile FileWatcher watcher;
+
+    AuthorizedKeysStore(File directory) {
+        this.directory = directory;
+    }
+
+    public static AuthorizedKeysStore forDirectory(File directory) {
+        return STORES.computeIfAbsent(directory.getAbsoluteFile(), AuthorizedKeysStore::new);
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the authorized keys of the issuer; empty if the issuer has no keys file
+     */
+    public AuthorizedKeys get(String issuer) {
+        if (!isValidIssuer(issuer)) {
+            return AuthorizedKeys.EMPTY;
+        }
+        AuthorizedKeys keys = issuers.get(issuer);
+        if (keys == null) {
+            keys = load(issuer);
+        } else if (watcher == null && keys.isStale()) {
+            keys = reload(issuer);
+        }
+        return keys;
+    }
+
+    /**
+     * Re-reads the keys file of the issuer and replaces the snapshot held for it.
+     */
+    public AuthorizedKeys reload(String issuer) {
+        AuthorizedKeys reloaded = load(issuer);
+        listeners.forEach(Runnable::run);
+        return reloaded;
+    }
+
+    private AuthorizedKeys load(String issuer) {
+        try {
+            AuthorizedKeys keys = AuthorizedKeys.load(new File(directory, issuer + DirectoryJWKSource.KEY_FILE_EXTENSION));
+            if (keys.getFile() != null) {
+                // a slow concurrent load must not replace a newer snapshot
+                return issuers.merge(issuer, keys,
+                    (previous, loaded) -> previous.getLastModified() > loaded.getLastModified() ? previous : loaded);
+            } else {
+                // don't hold on to unknown issuers, there is no bound on how many of those one could ask for
+                issuers.remove(issuer);
+                return keys;
+            }
+        } catch (IOException e) {
+            AuthorizedKeys previous = issuers.get(issuer);
+            if (previous != null) {
+                // e.g. rewritten while being read, the next change reads it again
+                LOG.warn("Couldn't reload keys for issuer '{}', keeping previous keys: {}", issuer, e.getMessage());
+                return previous;
+            }
+            LOG.warn("Couldn't load keys for issuer '{}' - failing back to empty set.", issuer, e);
+            return AuthorizedKeys.EMPTY;
+        }
+    }
+
+    public void clear() {
+        issuers.clear();
+    }
+
+    /**
+     * Registers a listener called after the keys of an issuer were reloaded.
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Starts watching the directory for changes of keys files, unless already watched.
+     */
+    public synchronized void watch(long pollInterval) {
+        if (watcher == null) {
+            FileWatcher fileWatcher = new FileWatcher(directory.toPath(),
+                file -> file.getFileName().toString().endsWith(DirectoryJWKSource.KEY_FILE_EXTENSION),
+                this::changed, pollInterval);
+            fileWatcher.start();
+            watcher = fileWatcher;
+        }
+    }
+
+    public synchronized void unwatch() {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
+    }
+
+    public boolean isWatched() {
+        return watcher != null;
+    }
+
+    private void changed(Path file) {
+        String name = file.getFileName().toString();
+        String issuer = name.substring(0, name.length() - DirectoryJWKSource.KEY_FILE_EXTENSION.length());
+        // issuers not seen yet are loaded on first use
+        if (issuers.containsKey(issuer)) {
+            LOG.info("Reloading keys of issuer '{}' from {}", issuer, file);
+            reload(issuer);
+        }
+    }
+
+    private static boolean isValidIssuer(String issuer) {
+        return issuer != null && !issuer.isEmpty() && !issuer.startsWith(".")
+            && issuer.indexOf('/') < 0 && issuer.indexOf('\\') < 0;
+    }
+
+}
@@ -17,31 +17,30 @@ package org.apifocal.activemix.jaas.commons.verifiers;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
-import com.nimbusds.jose.KeySourceException;
 import com.nimbusds.jose.jwk.JWK;
 import com.nimbusds.jose.jwk.JWKSelector;
-import com.nimbusds.jose.jwk.source.JWKSource;
 import com.nimbusds.jose.proc.SecurityContext;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
- * JWK source backed by directory.
+ * JWK source backed by directory. Keys of each issuer are read from {@code <issuer>.keys} once
+ * and served from a shared {@link AuthorizedKeysStore}.
  *
  * @param <C> Additional context information.
  */
-public class DirectoryJWKSource<C extends SecurityContext> implements JWKSource<C> {
+public class DirectoryJWKSource<C extends SecurityContext> implements WatchedJWKSource<C> {
 
     public static final String KEY_FILE_EXTENSION = ".keys";
 
-    private final Logger logger = LoggerFactory.getLogger(DirectoryJWKSource.class);
-    private final File directory;
+    private final AuthorizedKeysStore store;
 
     public DirectoryJWKSource(File directory) {
-        this.directory = directory;
+        this.store = AuthorizedKeysStore.forDirectory(directory);
+    }
+
+    public AuthorizedKeysStore getStore() {
+        return store;
     }
 
     @Override
@@ -50,17 +49,31 @@ public class DirectoryJWKSource<C extends SecurityContext> implements JWKSource<
 
         if (context instanceof TokenSecurityContext) {
             ((TokenSecurityContext)context).getIssuer()
-                .map(user -> {
-                    try {
-                        return SshAuthorizedKeysSet.createKeySet(new File(directory, user + KEY_FILE_EXTENSION), jwkSelector);
-                    } catch (KeySourceException e) {
-                        logger.warn("Couldn't load keys - failing back to empty set.", e);
-                        return Collections.<JWK>emptySet();
-                    }
-                }
-            ).ifPresent(selectedKey::addAll);
+                .map(store::get)
+                .map(keys -> keys.select(jwkSelector))
+                .ifPresent(selectedKey::addAll);
         }
         return selectedKey;
     }
 
+    @Override
+    public void watch(long pollInterval) {
+        store.watch(pollInterval);
+    }
+
+    @Override
+    public void unwatch() {
+        store.unwatch();
+    }
+
+    @Override
+    public void addListener(Runnable listener) {
+        store.addListener(listener);
+    }
+
+    @Override
+    public void removeListener(Runnable listener) {
+        store.removeListener(listener);
+    }
+
 }
@@ -16,23 +16,35 @@
 package org.apifocal.activemix.jaas.commons.verifiers;
 
 import java.io.File;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apifocal.activemix.commons.FileWatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.nimbusds.jose.KeySourceException;
 import com.nimbusds.jose.jwk.JWK;
 import com.nimbusds.jose.jwk.JWKSelector;
-import com.nimbusds.jose.jwk.source.JWKSource;
 import com.nimbusds.jose.proc.SecurityContext;
 
 /**
- * JWK source backed by directory.
+ * JWK source backed by a single file. The file is read once and re-read only when it changes,
+ * either by the watcher in the background or by the first login noticing the change. Listeners are
+ * called after every reload.
  *
  * @param <C> Additional context information.
  */
-public class FileJWKSource<C extends SecurityContext> implements JWKSource<C> {
+public class FileJWKSource<C extends SecurityContext> implements WatchedJWKSource<C> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileJWKSource.class);
 
     private final File keys;
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private volatile AuthorizedKeys authorizedKeys;
+    private FileWatcher watcher;
 
     public FileJWKSource(File keys) {
         this.keys = keys;
@@ -40,9 +52,62 @@ public class FileJWKSource<C extends SecurityContext> implements JWKSource<C> {
 
     @Override
     public List<JWK> get(JWKSelector jwkSelector, C context) throws KeySourceException {
-        List<JWK> selectedKey = new ArrayList<>();
-        selectedKey.addAll(SshAuthorizedKeysSet.createKeySet(keys, jwkSelector));
-        return selectedKey;
+        return authorizedKeys().select(jwkSelector);
+    }
+
+    AuthorizedKeys authorizedKeys() throws KeySourceException {
+        AuthorizedKeys current = authorizedKeys;
+        if (current == null || (watcher == null && current.isStale())) {
+            try {
+                current = AuthorizedKeys.load(keys);
+            } catch (IOException e) {
+                throw new KeySourceException("Could not read file " + keys, e);
+            }
+            boolean reloaded = authorizedKeys != null;
+            authorizedKeys = current;
+            if (reloaded) {
+                listeners.forEach(Runnable::run);
+            }
+        }
+        return current;
+    }
+
+    @Override
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public synchronized void watch(long pollInterval) {
+        if (watcher == null) {
+            Path file = keys.getAbsoluteFile().toPath();
+            watcher = new FileWatcher(file.getParent(), file::equals, this::changed, pollInterval);
+            watcher.start();
+        }
+    }
+
+    @Override
+    public synchronized void unwatch() {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
+    }
+
+    private void changed(Path file) {
+        LOG.info("Reloading keys from {}", file);
+        try {
+            authorizedKeys = AuthorizedKeys.load(keys);
+        } catch (IOException e) {
+            LOG.warn("Couldn't reload keys from {} - keeping previous keys.", file, e);
+            return;
+        }
+        listeners.forEach(Runnable::run);
     }
 
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons.verifiers;
+
+import java.security.Key;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.Ed25519Verifier;
+import com.nimbusds.jose.crypto.factories.DefaultJWSVerifierFactory;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.KeyConverter;
+import com.nimbusds.jose.jwk.OctetKeyPair;
+
+/**
+ * Verifiers built once per key and algorithm.
+ *
+ * Verifiers are held against the identity of the {@link JWK} they were built for, and released
+ * together with it, e.g. when the authorized keys file the key was read from is reloaded.
+ */
+final class JWSVerifiers {
+
+    private static final DefaultJWSVerifierFactory FACTORY = new DefaultJWSVerifierFactory();
+    private static final LoadingCache<JWK, ConcurrentMap<JWSAlgorithm, JWSVerifier>> VERIFIERS = CacheBuilder.newBuilder()
+        .weakKeys()
+        .build(new CacheLoader<JWK, ConcurrentMap<JWSAlgorithm, JWSVerifier>>() {
+            @Override
+            public ConcurrentMap<JWSAlgorithm, JWSVerifier> load(JWK key) {
+                return new ConcurrentHashMap<>();
+            }
+        });
+
+    /**
+     * @return the verifier of signatures made with the given key and algorithm of the header
+     */
+    static JWSVerifier get(JWK key, JWSHeader header) throws JOSEException {
+        ConcurrentMap<JWSAlgorithm, JWSVerifier> verifiers;
+        try {
+            verifiers = VERIFIERS.get(key);
+        } catch (ExecutionException e) {
+            throw new JOSEException("Cannot create verifier", e.getCause());
+        }
+
+        JWSVerifier verifier = verifiers.get(header.getAlgorithm());
+        if (verifier == null) {
+            // racing threads may both create a verifier, that is harmless
+            verifier = create(key, header);
+            JWSVerifier existing = verifiers.putIfAbsent(header.getAlgorithm(), verifier);
+            verifier = existing != null ? existing : verifier;
+        }
+        return verifier;
+    }
+
+    static long size() {
+        return VERIFIERS.size();
+    }
+
+    private static JWSVerifier create(JWK key, JWSHeader header) throws JOSEException {
+        if (key instanceof OctetKeyPair) {
+            // Ed25519 keys have no java.security counterpart the verifier factory could use
+            return new Ed25519Verifier(((OctetKeyPair) key).toPublicJWK());
+        }
+        List<Key> keys = KeyConverter.toJavaKeys(Collections.singletonList(key));
+        if (keys.isEmpty()) {
+            throw new JOSEException("Unsupported key " + key.getKeyID() + " of type " + key.getKeyType());
+        }
+        return FACTORY.createJWSVerifier(header, keys.get(0));
+    }
+
+    private JWSVerifiers() {
+        // utility
+    }
+
+}
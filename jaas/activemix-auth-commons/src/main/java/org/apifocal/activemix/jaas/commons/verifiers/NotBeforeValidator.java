@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons.verifiers;
+
+import java.util.Date;
+
+import org.apifocal.activemix.commons.Settings;
+import org.apifocal.activemix.jaas.commons.TokenValidationException;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+
+/**
+ * Validator rejecting tokens presented before the time in their 'nbf' claim.
+ */
+public class NotBeforeValidator extends AbstractClaimsValidator {
+
+    public NotBeforeValidator(Settings settings) {
+        super(settings);
+    }
+
+    @Override
+    protected void validate(JWTClaimsSet claims, long now) throws TokenValidationException {
+        Date notBefore = claims.getNotBeforeTime();
+        if (notBefore != null && notBefore.getTime() - skew > now) {
+            throw new TokenValidationException("Token not valid before " + notBefore, notBefore.getTime() - skew);
+        }
+    }
+
+}
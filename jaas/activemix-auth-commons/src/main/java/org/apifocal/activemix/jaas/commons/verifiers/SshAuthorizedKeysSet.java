@@ -15,66 +15,137 @@
  */
 package org.apifocal.activemix.jaas.commons.verifiers;
 
-import com.nimbusds.jose.KeySourceException;
 import com.nimbusds.jose.jwk.*;
+import com.nimbusds.jose.util.Base64URL;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.interfaces.ECPublicKey;
 import java.security.interfaces.RSAPublicKey;
-import java.security.spec.EllipticCurve;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
+import org.apifocal.activemix.jaas.commons.Keys;
 import org.apifocal.activemix.jaas.commons.SshKeyCodec;
 
 /**
- * A key set which is backed by ssh authorized keys file.
+ * Reader of the keys in an authorized keys file.
+ *
+ * Small files are read at once and parsed on the calling thread. Larger files are memory-mapped
+ * and split into line-aligned chunks, which are parsed in parallel on the common fork-join pool;
+ * keys are returned in the order of the file either way. A mapped file truncated while being
+ * parsed fails with an {@link IOException}, the file is to be read again once it was rewritten.
  */
-class SshAuthorizedKeysSet extends JWKSet {
-	private static final long serialVersionUID = 1L;
+final class SshAuthorizedKeysSet {
 
-	SshAuthorizedKeysSet(File file) throws IOException {
-        super(read(file));
-    }
+    // below this size, forking costs more than it saves
+    static final int PARALLEL_THRESHOLD = 256 * 1024;
+    private static final int CHUNK_SIZE = 64 * 1024;
 
-    public static List<JWK> createKeySet(File file, JWKSelector jwkSelector) throws KeySourceException {
-        try {
-            SshAuthorizedKeysSet fileJWKSet = new SshAuthorizedKeysSet(file);
-            return jwkSelector.select(fileJWKSet);
-        } catch (IOException e) {
-            throw new KeySourceException("Could not read file " + file, e);
+    static List<JWK> read(File file) throws IOException {
+        if (file.length() < PARALLEL_THRESHOLD) {
+            // the buffer is ours, so keys are decoded in place
+            return parse(ByteBuffer.wrap(Files.readAllBytes(file.toPath())));
         }
-    }
-
-    private static List<JWK> read(File file) throws IOException {
-        List<JWK> keys = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                Optional.ofNullable(SshKeyCodec.parse(line))
-                    .map(SshAuthorizedKeysSet::toNimbusKey)
-                    .ifPresent(keys::add);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Keys file " + file + " is too large");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            try {
+                return ForkJoinPool.commonPool().invoke(new ParseTask(buffer, 0, (int) size));
+            } catch (InternalError e) {
+                // raised by the JVM on a fault reading pages of the file truncated after it was mapped
+                throw new IOException("Keys file " + file + " changed while being read", e);
             }
         }
+    }
 
+    private static List<JWK> parse(ByteBuffer buffer) {
+        List<JWK> keys = new ArrayList<>();
+        SshKeyCodec.parseLines(buffer, key -> Optional.ofNullable(toNimbusKey(key)).ifPresent(keys::add));
         return keys;
     }
 
     private static JWK toNimbusKey(PublicKey publicKey) {
+        String keyId = keyId(publicKey);
         if (publicKey instanceof RSAPublicKey) {
-            return new RSAKey.Builder((RSAPublicKey) publicKey).build();
+            return new RSAKey.Builder((RSAPublicKey) publicKey).keyID(keyId).build();
         } else if (publicKey instanceof ECPublicKey) {
-            ECPublicKey publicKey1 = (ECPublicKey) publicKey;
-            EllipticCurve curve = publicKey1.getParams().getCurve();
-            return new ECKey.Builder(new Curve(curve.toString()), publicKey1).build();
+            ECPublicKey ecKey = (ECPublicKey) publicKey;
+            Curve curve = Curve.forECParameterSpec(ecKey.getParams());
+            return curve != null ? new ECKey.Builder(curve, ecKey).keyID(keyId).build() : null;
+        } else if (Keys.isEd25519(publicKey)) {
+            return new OctetKeyPair.Builder(Curve.Ed25519, Base64URL.encode(Keys.rawEd25519Key(publicKey))).keyID(keyId).build();
         }
 
         return null;
     }
 
+    /**
+     * Parses the lines between start and end, halving the range at a line break until it fits a chunk.
+     */
+    private static final class ParseTask extends RecursiveTask<List<JWK>> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient ByteBuffer buffer;
+        private final int start;
+        private final int end;
+
+        ParseTask(ByteBuffer buffer, int start, int end) {
+            this.buffer = buffer;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected List<JWK> compute() {
+            int middle = end - start > CHUNK_SIZE ? nextLine(start + (end - start) / 2) : end;
+            if (middle >= end) {
+                // each task parses its own view, positions of the shared buffer are never touched
+                ByteBuffer chunk = buffer.duplicate();
+                ((Buffer) chunk).limit(end);
+                ((Buffer) chunk).position(start);
+                return parse(chunk);
+            }
+
+            ParseTask tail = new ParseTask(buffer, middle, end);
+            tail.fork();
+            List<JWK> keys = new ParseTask(buffer, start, middle).compute();
+            keys.addAll(tail.join());
+            return keys;
+        }
+
+        private int nextLine(int position) {
+            while (position < end && buffer.get(position) != '\n') {
+                position++;
+            }
+            return position + 1;
+        }
+    }
+
+    private static String keyId(PublicKey publicKey) {
+        try {
+            return Keys.fingerprint(publicKey, Keys.defaultAlgorithm());
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    private SshAuthorizedKeysSet() {
+        // utility
+    }
+
 }
@@ -41,4 +41,9 @@ public class TokenSignatureValidator<T extends JWT> implements TokenValidator<T,
         }
     }
 
+    @Override
+    public Cost cost() {
+        return Cost.STRUCTURAL;
+    }
+
 }
@@ -16,7 +16,10 @@
 package org.apifocal.activemix.jaas.commons.verifiers;
 
 import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import org.apifocal.activemix.commons.FileWatcher;
 import org.apifocal.activemix.commons.Settings;
 
 import org.slf4j.Logger;
@@ -27,25 +30,70 @@ import com.nimbusds.jose.proc.SecurityContext;
 
 /**
  * Validator of token signer information.
+ *
+ * Keys are read from the 'keys' file or directory, which is watched for changes unless 'watch' is
+ * false. Changes are also polled for every 'pollInterval' milliseconds. Key sources are shared by
+ * all validators using the same 'keys' location, so each file is read and watched only once, until
+ * {@link #clear()} stops all watchers.
  */
 public class TokenSignerValidator extends AbstractSignerValidator {
 
     private static final Logger LOG = LoggerFactory.getLogger(TokenSignerValidator.class);
+    private static final ConcurrentMap<File, WatchedJWKSource<SecurityContext>> SOURCES = new ConcurrentHashMap<>();
+
     private final File keys;
+    private final boolean watch;
+    private final long pollInterval;
+    private volatile WatchedJWKSource<SecurityContext> source;
 
     public TokenSignerValidator(Settings settings) {
         this.keys = settings.stringOption("keys")
             .map(File::new)
             .filter(File::exists)
             .orElseThrow(() -> new IllegalStateException("TokenSignerValidator requires 'keys' property pointing to authorized keys directory"));
+        this.watch = settings.booleanOption("watch", true);
+        this.pollInterval = settings.durationOption("pollInterval", FileWatcher.DEFAULT_POLL_INTERVAL);
     }
 
     protected JWKSource<SecurityContext> getJwkSource() {
         if (jwkSource == null) {
-            jwkSource = keys.isDirectory() ? new DirectoryJWKSource<>(keys) : new FileJWKSource<>(keys);
-            LOG.info("Using JWKSource from {}", keys.getAbsolutePath());
+            source = SOURCES.computeIfAbsent(keys.getAbsoluteFile(), this::createJwkSource);
+            jwkSource = source;
         }
         return jwkSource;
     }
 
+    /**
+     * Registers a listener called after the keys of this validator were reloaded.
+     */
+    public void addListener(Runnable listener) {
+        getJwkSource();
+        source.addListener(listener);
+    }
+
+    public void removeListener(Runnable listener) {
+        getJwkSource();
+        source.removeListener(listener);
+    }
+
+    /**
+     * Stops watching all keys locations and forgets their sources. Validators created afterwards
+     * start new watchers; existing ones re-read changed keys on first use instead.
+     */
+    public static void clear() {
+        SOURCES.values().forEach(WatchedJWKSource::unwatch);
+        SOURCES.clear();
+    }
+
+    private WatchedJWKSource<SecurityContext> createJwkSource(File location) {
+        LOG.info("Using JWKSource from {}", location);
+        WatchedJWKSource<SecurityContext> created = location.isDirectory()
+            ? new DirectoryJWKSource<>(location)
+            : new FileJWKSource<>(location);
+        if (watch) {
+            created.watch(pollInterval);
+        }
+        return created;
+    }
+
 }
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons.verifiers;
+
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+
+/**
+ * JWK source read from files, which can be watched for changes and reports reloaded keys.
+ *
+ * @param <C> Additional context information.
+ */
+public interface WatchedJWKSource<C extends SecurityContext> extends JWKSource<C> {
+
+    /**
+     * Starts watching the keys for changes, unless already watched.
+     */
+    void watch(long pollInterval);
+
+    void unwatch();
+
+    /**
+     * Registers a listener called after keys were reloaded.
+     */
+    void addListener(Runnable listener);
+
+    void removeListener(Runnable listener);
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CoarseClockTest {
+
+    @Test
+    public void testStopAndRestart() throws Exception {
+        long before = System.currentTimeMillis();
+        Assert.assertTrue(CoarseClock.millis() >= before - CoarseClock.RESOLUTION);
+        Assert.assertTrue(CoarseClock.isRunning());
+
+        CoarseClock.stop();
+        Assert.assertFalse(CoarseClock.isRunning());
+
+        // the next reading starts the clock again, at the current time
+        Thread.sleep(50);
+        long after = System.currentTimeMillis();
+        Assert.assertTrue(CoarseClock.millis() >= after);
+        Assert.assertTrue(CoarseClock.isRunning());
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FailureLimiterTest {
+
+    @Test
+    public void testLimitAfterBurst() throws Exception {
+        FailureLimiter limiter = new FailureLimiter(3, 10.0, 16);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertFalse(limiter.isLimited("mallory"));
+            limiter.failed("mallory");
+        }
+        Assert.assertTrue(limiter.isLimited("mallory"));
+        Assert.assertFalse(limiter.isLimited("alice"));
+        Assert.assertEquals(1, limiter.limited());
+
+        // one permit is back after 100ms
+        Thread.sleep(150);
+        Assert.assertFalse(limiter.isLimited("mallory"));
+        limiter.failed("mallory");
+        Assert.assertTrue(limiter.isLimited("mallory"));
+    }
+
+    @Test
+    public void testUnknownKey() throws Exception {
+        FailureLimiter limiter = new FailureLimiter(1, 1.0, 16);
+        limiter.failed(null);
+        Assert.assertFalse(limiter.isLimited(null));
+    }
+
+}
@@ -15,15 +15,27 @@
  */
 package org.apifocal.activemix.jaas.commons;
 
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.KeyPair;
+import java.security.Security;
+
 import org.apifocal.activemix.jaas.commons.Keys;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 
 public class KeysTest {
     private static String SAMPLE_MD5 = "MD5:33:f2:84:1d:c3:0d:d5:12:57:f3:c6:e2:1f:cc:52:af";
     private static String SAMPLE_SHA256 = "SHA256:NUzLZ0kLqJh47YsctlAFMXT54fVNCHDM7zbAkoQ2a6g";
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void testMatchDigestAlgorithm() throws Exception {
         Assert.assertEquals("MD5", Keys.digestAlgorithmFromName("MD5"));
@@ -53,4 +65,40 @@ public class KeysTest {
         Assert.assertEquals("33:f2:84:1d:c3:0d:d5:12:57:f3:c6:e2:1f:cc:52:af", Keys.getDigestText(SAMPLE_MD5));
         Assert.assertEquals("NUzLZ0kLqJh47YsctlAFMXT54fVNCHDM7zbAkoQ2a6g", Keys.getDigestText(SAMPLE_SHA256));
     }
+
+    @Test
+    public void testKeyPairCached() throws Exception {
+        File key = folder.newFile("id_rsa");
+        Files.copy(Paths.get("src/test/resources/ssh/bob/id_rsa-bob"), key.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        KeyPair keyPair = Keys.readKeyPair(key.toPath(), null);
+        Assert.assertSame(keyPair, Keys.readKeyPair(key.toPath(), null));
+        // the provider is bound to the converters, never registered globally
+        Assert.assertNull(Security.getProvider("BC"));
+
+        Assert.assertTrue(key.setLastModified(key.lastModified() - 2000));
+        KeyPair reread = Keys.readKeyPair(key.toPath(), null);
+        Assert.assertNotSame(keyPair, reread);
+        Assert.assertEquals(keyPair.getPublic(), reread.getPublic());
+    }
+
+    @Test
+    public void testEncryptedKeyPairNotCached() throws Exception {
+        File key = folder.newFile("id_rsa-carol");
+        Files.copy(Paths.get("src/test/resources/ssh/carol/id_rsa-carol"), key.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        KeyPair keyPair = Keys.readKeyPair(key.toPath(), new InsecurePasswordProvider());
+        KeyPair reread = Keys.readKeyPair(key.toPath(), new InsecurePasswordProvider());
+        Assert.assertNotSame(keyPair, reread);
+        Assert.assertEquals(keyPair.getPublic(), reread.getPublic());
+
+        // a decrypted key must not be handed out without the password
+        try {
+            Keys.readKeyPair(key.toPath(), new InsecurePasswordProvider("wrong"));
+            Assert.fail("Key should not be readable with a wrong password");
+        } catch (Exception e) {
+            // expected
+        }
+    }
+
 }
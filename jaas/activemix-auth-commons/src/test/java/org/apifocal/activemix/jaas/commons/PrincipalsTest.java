@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apifocal.activemix.commons.Settings;
+import org.apifocal.activemix.jaas.commons.mappers.IssuerMapper;
+import org.apifocal.activemix.jaas.commons.mappers.SubjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+
+public class PrincipalsTest {
+
+    @Test
+    public void testInterned() {
+        Assert.assertSame(Principals.subject("alice"), Principals.subject(new String("alice")));
+        Assert.assertSame(Principals.issuer("bar"), Principals.issuer("bar"));
+        Assert.assertNotSame(Principals.subject("bar"), Principals.issuer("bar"));
+        Assert.assertEquals(new SubjectPrincipal("alice"), Principals.subject("alice"));
+    }
+
+    @Test
+    public void testNullName() {
+        Assert.assertNull(Principals.subject(null).getName());
+    }
+
+    @Test
+    public void testMappersAppend() {
+        JWTClaimsSet claims = new JWTClaimsSet.Builder().subject("alice").issuer("bar").build();
+        Settings settings = new Settings(Collections.emptyMap());
+
+        List<Principal> principals = new ArrayList<>();
+        new SubjectMapper(settings).map(claims, principals);
+        new IssuerMapper(settings).map(claims, principals);
+
+        Assert.assertEquals(2, principals.size());
+        Assert.assertSame(Principals.subject("alice"), principals.get(0));
+        Assert.assertSame(Principals.issuer("bar"), principals.get(1));
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.hash.HashCode;
+
+public class RejectedTokenCacheTest {
+
+    @Test
+    public void testRejectUntil() throws Exception {
+        RejectedTokenCache cache = new RejectedTokenCache(16, Tokens.minutes(1));
+        HashCode expired = VerifiedTokenCache.key("expired", "bar");
+        HashCode early = VerifiedTokenCache.key("early", "bar");
+
+        cache.reject(expired, Long.MAX_VALUE);
+        cache.reject(early, CoarseClock.millis() + 200);
+        Assert.assertTrue(cache.isRejected(expired));
+        Assert.assertTrue(cache.isRejected(early));
+        Assert.assertFalse(cache.isRejected(VerifiedTokenCache.key("other", "bar")));
+
+        Thread.sleep(300);
+        Assert.assertTrue(cache.isRejected(expired));
+        Assert.assertFalse(cache.isRejected(early));
+        Assert.assertEquals(3, cache.hits());
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        RejectedTokenCache cache = new RejectedTokenCache(16, Tokens.minutes(1), 200);
+        HashCode key = VerifiedTokenCache.key("forged", "bar");
+
+        cache.reject(key);
+        Assert.assertTrue(cache.isRejected(key));
+        Thread.sleep(300);
+        Assert.assertFalse(cache.isRejected(key));
+    }
+
+}
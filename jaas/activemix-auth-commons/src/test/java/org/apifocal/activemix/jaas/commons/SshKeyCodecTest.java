@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+
+public class SshKeyCodecTest {
+
+    @Test
+    public void testParseLines() throws Exception {
+        String keys = "# comment\n\n"
+            + resource("./keys/bob.keys") + "\r\n"
+            + "command=\"echo\" " + resource("./ssh/dave/id_ecdsa-dave.pub") + "\n"
+            + resource("./ssh/dave/id_ed25519-dave.pub");
+
+        List<PublicKey> parsed = new ArrayList<>();
+        int count = SshKeyCodec.parseLines(ByteBuffer.wrap(keys.getBytes(StandardCharsets.US_ASCII)), parsed::add);
+
+        Assert.assertEquals(4, count);
+        Assert.assertEquals("RSA", parsed.get(0).getAlgorithm());
+        Assert.assertEquals("DSA", parsed.get(1).getAlgorithm());
+        Assert.assertEquals("EC", parsed.get(2).getAlgorithm());
+        Assert.assertTrue(Keys.isEd25519(parsed.get(3)));
+    }
+
+    @Test
+    public void testReadOnlyBuffer() throws Exception {
+        byte[] line = resource("./ssh/bob/id_rsa-bob.pub").getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.wrap(line.clone()).asReadOnlyBuffer();
+
+        // read only buffers are decoded into a copy and left as they are
+        PublicKey key = SshKeyCodec.parse(buffer);
+        Assert.assertNotNull(key);
+        Assert.assertEquals(SshKeyCodec.parse(ByteBuffer.wrap(line)), key);
+        Assert.assertEquals(resource("./ssh/bob/id_rsa-bob.pub"), StandardCharsets.US_ASCII.decode(buffer).toString());
+    }
+
+    @Test
+    public void testInvalidKeys() throws Exception {
+        String key = resource("./ssh/dave/id_ecdsa-dave.pub").split(" ")[1];
+
+        Assert.assertNull(SshKeyCodec.parse("ssh-rsa " + key.substring(0, key.length() / 2)));
+        Assert.assertNull(SshKeyCodec.parse("ssh-rsa AAAA$$$$"));
+        Assert.assertNull(SshKeyCodec.parse("no key here"));
+    }
+
+    @Test
+    public void testDecodeBase64InPlace() throws Exception {
+        byte[] text = "aGVsbG8gd29ybGQ=".getBytes(StandardCharsets.US_ASCII);
+        int length = SshKeyCodec.decodeBase64(text, 0, text.length);
+        Assert.assertEquals("hello world", new String(text, 0, length, StandardCharsets.US_ASCII));
+    }
+
+    private static String resource(String name) throws Exception {
+        return Resources.toString(Resources.getResource(name), Charsets.UTF_8).trim();
+    }
+
+}
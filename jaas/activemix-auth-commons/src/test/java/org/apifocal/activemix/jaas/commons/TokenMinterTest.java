@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons;
+
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.apifocal.activemix.commons.Settings;
+import org.apifocal.activemix.jaas.commons.verifiers.TokenSecurityContext;
+import org.apifocal.activemix.jaas.commons.verifiers.TokenSignerValidator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+public class TokenMinterTest {
+
+    @Test
+    public void testMintBatch() throws Exception {
+        TokenMinter minter = TokenMinter.forKey(Paths.get("src/test/resources/ssh/dave/id_ecdsa-dave"), null);
+        Assert.assertEquals(JWSAlgorithm.ES256, minter.getAlgorithm());
+
+        List<String> tokens = minter.mint(IntStream.range(0, 100).mapToObj(i -> claims("device-" + i)));
+
+        Assert.assertEquals(100, tokens.size());
+        TokenSignerValidator validator = new TokenSignerValidator(new Settings(ImmutableMap.of("keys", "src/test/resources/keys", "watch", "false")));
+        for (int i = 0; i < tokens.size(); i++) {
+            SignedJWT token = Tokens.parseToken(tokens.get(i));
+            // signed in parallel, returned in order
+            Assert.assertEquals("device-" + i, token.getJWTClaimsSet().getSubject());
+            Assert.assertEquals(minter.getKeyID(), token.getHeader().getKeyID());
+            validator.validate(token, new TokenSecurityContext("dave"));
+        }
+        Assert.assertEquals(100, minter.stats().minted());
+        Assert.assertTrue(minter.stats().throughput() > 0);
+    }
+
+    @Test
+    public void testMintOne() throws Exception {
+        TokenMinter minter = TokenMinter.forKey(Paths.get("src/test/resources/ssh/bob/id_rsa-bob"), null);
+        SignedJWT token = Tokens.parseToken(minter.mint(claims("device")));
+
+        Assert.assertEquals(JWSAlgorithm.RS256, token.getHeader().getAlgorithm());
+        Assert.assertEquals(1, minter.stats().minted());
+    }
+
+    private static JWTClaimsSet claims(String subject) {
+        return new JWTClaimsSet.Builder().subject(subject).issuer("dave").build();
+    }
+
+}
@@ -17,6 +17,7 @@ package org.apifocal.activemix.jaas.commons;
 
 import java.security.KeyPair;
 import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
 import java.security.interfaces.RSAPrivateKey;
 import java.security.interfaces.RSAPublicKey;
 import java.text.ParseException;
@@ -107,6 +108,23 @@ public class TokensTest {
         LOG.info("FINGER PUBLIC: {} {}", fingerprint.length(), fingerprint);
     }
     
+    @Test
+    public void testReadEcAndEd25519SshKeys() throws Exception {
+        String ecKey = Resources.toString(Resources.getResource("./ssh/dave/id_ecdsa-dave.pub"), Charsets.UTF_8);
+        PublicKey ecPublic = SshKeyCodec.parse(ecKey);
+        Assert.assertTrue(ecPublic instanceof ECPublicKey);
+        Assert.assertEquals(JWSAlgorithm.ES256, Tokens.algorithm(ecPublic));
+
+        String edKey = Resources.toString(Resources.getResource("./ssh/dave/id_ed25519-dave.pub"), Charsets.UTF_8);
+        PublicKey edPublic = SshKeyCodec.parse(edKey);
+        Assert.assertTrue(Keys.isEd25519(edPublic));
+        Assert.assertEquals(JWSAlgorithm.EdDSA, Tokens.algorithm(edPublic));
+
+        // the key id of tokens signed with the private key must match the authorized key
+        KeyPair keyPair = Keys.readKeyPair(Resources.toString(Resources.getResource("./ssh/dave/id_ed25519-dave"), Charsets.UTF_8), null);
+        Assert.assertEquals(Keys.fingerprint(edPublic, Keys.defaultAlgorithm()), Keys.fingerprint(keyPair.getPublic(), Keys.defaultAlgorithm()));
+    }
+
     @Test
     public void testSignToken() throws Exception {
         String privkey = Resources.toString(Resources.getResource("./ssh/bob/id_rsa-bob"), Charsets.UTF_8);
@@ -157,6 +175,27 @@ public class TokensTest {
         LOG.info("TOKEN [{}]: {}", token.length(), token);
     }
 
+    @Test
+    public void testCreateTokenEc() throws Exception {
+        assertSigned("./ssh/dave/id_ecdsa-dave", JWSAlgorithm.ES256);
+    }
+
+    @Test
+    public void testCreateTokenEd25519() throws Exception {
+        assertSigned("./ssh/dave/id_ed25519-dave", JWSAlgorithm.EdDSA);
+    }
+
+    private static void assertSigned(String key, JWSAlgorithm algorithm) throws Exception {
+        JWTClaimsSet.Builder claims = new JWTClaimsSet.Builder();
+        Tokens.subject(claims, "dave");
+        Tokens.issuer(claims, "dave");
+
+        String privkey = Resources.toString(Resources.getResource(key), Charsets.UTF_8);
+        SignedJWT token = Tokens.parseToken(Tokens.createToken(claims.build(), privkey, null));
+        Assert.assertNotNull(token);
+        Assert.assertEquals(algorithm, token.getHeader().getAlgorithm());
+    }
+
     @Test
     public void testCreateTokenEncryptedKey() throws Exception {
         String user = "carol";
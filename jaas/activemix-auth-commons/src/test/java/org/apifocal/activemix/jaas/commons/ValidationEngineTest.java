@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apifocal.activemix.commons.Settings;
+import org.apifocal.activemix.jaas.commons.verifiers.AbstractSignerValidator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.SignedJWT;
+
+public class ValidationEngineTest {
+
+    @Test
+    @SuppressWarnings("rawtypes")
+    public void testCheapValidatorsRunFirst() throws Exception {
+        ValidationEngine engine = new ValidationEngine(2, 16, 1000);
+        SlowSigner signer = new SlowSigner(0);
+        List<TokenValidator> validators = new ArrayList<>();
+        validators.add(signer);
+        validators.add(new TokenValidator<SignedJWT, SecurityContext>() {
+            @Override
+            public void validate(SignedJWT token, SecurityContext securityContext) throws TokenValidationException {
+                throw new TokenValidationException("rejected");
+            }
+
+            @Override
+            public Cost cost() {
+                return Cost.CLAIMS;
+            }
+        });
+
+        try {
+            engine.validate(validators, null, null);
+            Assert.fail("Validation should fail");
+        } catch (TokenValidationException e) {
+            Assert.assertEquals("rejected", e.getMessage());
+        } finally {
+            engine.shutdown();
+        }
+        Assert.assertEquals(0, signer.calls.get());
+    }
+
+    @Test
+    @SuppressWarnings("rawtypes")
+    public void testTimeout() throws Exception {
+        ValidationEngine engine = new ValidationEngine(2, 16, 100);
+        List<TokenValidator> validators = new ArrayList<>();
+        validators.add(new SlowSigner(5000));
+
+        long start = System.currentTimeMillis();
+        try {
+            engine.validate(validators, null, null);
+            Assert.fail("Validation should time out");
+        } catch (TokenValidationException e) {
+            Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+        } finally {
+            engine.shutdown();
+        }
+        Assert.assertEquals(1, engine.stats().get(SlowSigner.class.getName()).timedOut());
+    }
+
+    @Test
+    @SuppressWarnings("rawtypes")
+    public void testTimeoutPerValidator() throws Exception {
+        Map<String, String> options = new HashMap<>();
+        options.put("timeout", "2000");
+        options.put("timeout.SlowSigner", "100");
+        ValidationEngine engine = new ValidationEngine(new Settings(options));
+        List<TokenValidator> validators = new ArrayList<>();
+        validators.add(new SlowSigner(5000));
+        validators.add(new SlowCheck(500));
+
+        long start = System.currentTimeMillis();
+        try {
+            engine.validate(validators, null, null);
+            Assert.fail("Validation should time out");
+        } catch (ValidationUnavailableException e) {
+            Assert.assertEquals("Token validation timed out in " + SlowSigner.class.getName() + " after 100ms", e.getMessage());
+            Assert.assertTrue(System.currentTimeMillis() - start < 500);
+        } finally {
+            engine.shutdown();
+        }
+        // the other check had time left, it was only cancelled
+        Assert.assertEquals(1, engine.stats().get(SlowSigner.class.getName()).timedOut());
+        ValidationEngine.Stats other = engine.stats().get(SlowCheck.class.getName());
+        Assert.assertTrue(other == null || other.timedOut() == 0);
+    }
+
+    @Test
+    @SuppressWarnings("rawtypes")
+    public void testStats() throws Exception {
+        ValidationEngine engine = new ValidationEngine(2, 16, 1000);
+        List<TokenValidator> validators = new ArrayList<>();
+        validators.add(new SlowSigner(0));
+        validators.add(new SlowSigner(10));
+
+        try {
+            engine.validate(validators, null, null);
+            engine.validate(validators, null, null);
+        } finally {
+            engine.shutdown();
+        }
+        Assert.assertEquals(4, engine.stats().get(SlowSigner.class.getName()).passed());
+        Assert.assertEquals(0, engine.stats().get(SlowSigner.class.getName()).failed());
+    }
+
+    @Test
+    @SuppressWarnings("rawtypes")
+    public void testPassedValidatorsRecorded() throws Exception {
+        ValidationEngine engine = new ValidationEngine(2, 16, 1000);
+        SlowSigner signer = new SlowSigner(0);
+        List<TokenValidator> validators = new ArrayList<>();
+        validators.add(signer);
+        validators.add(new TokenValidator<SignedJWT, SecurityContext>() {
+            @Override
+            public void validate(SignedJWT token, SecurityContext securityContext) throws TokenValidationException {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new TokenValidationException("revoked");
+            }
+        });
+
+        List<TokenValidator> passed = new ArrayList<>();
+        try {
+            engine.validate(validators, null, null, passed);
+            Assert.fail("Validation should fail");
+        } catch (TokenValidationException e) {
+            Assert.assertEquals("revoked", e.getMessage());
+        } finally {
+            engine.shutdown();
+        }
+        Assert.assertEquals(1, passed.size());
+        Assert.assertSame(signer, passed.get(0));
+    }
+
+    @Test
+    @SuppressWarnings("rawtypes")
+    public void testCancelledChecksReleasePending() throws Exception {
+        // one thread: of three checks one runs, the others are still queued when they are cancelled
+        ValidationEngine engine = new ValidationEngine(1, 4, 50);
+        List<TokenValidator> validators = new ArrayList<>();
+        validators.add(new SlowSigner(5000));
+        validators.add(new SlowSigner(5000));
+        validators.add(new SlowSigner(5000));
+
+        try {
+            for (int i = 0; i < 5; i++) {
+                try {
+                    engine.validate(validators, null, null);
+                    Assert.fail("Validation should time out");
+                } catch (TokenValidationException e) {
+                    Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Token validation timed out"));
+                }
+                Assert.assertEquals(0, engine.pending());
+            }
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    private static class SlowCheck implements TokenValidator<SignedJWT, SecurityContext> {
+        private final long delay;
+
+        SlowCheck(long delay) {
+            this.delay = delay;
+        }
+
+        @Override
+        public void validate(SignedJWT token, SecurityContext securityContext) throws TokenValidationException {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                throw new TokenValidationException("interrupted");
+            }
+        }
+    }
+
+    private static class SlowSigner extends AbstractSignerValidator {
+        private final long delay;
+        private final AtomicInteger calls = new AtomicInteger();
+
+        SlowSigner(long delay) {
+            this.delay = delay;
+        }
+
+        @Override
+        public void validate(SignedJWT token, SecurityContext securityContext) throws TokenValidationException {
+            calls.incrementAndGet();
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                throw new TokenValidationException("interrupted");
+            }
+        }
+
+        @Override
+        protected JWKSource<SecurityContext> getJwkSource() {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apifocal.activemix.commons.Settings;
+import org.apifocal.activemix.jaas.commons.verifiers.TokenSignatureValidator;
+import org.apifocal.activemix.jaas.commons.verifiers.TokenSignerValidator;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ValidatorChainTest {
+
+    @Test
+    @SuppressWarnings("rawtypes")
+    public void testCheapestFirst() throws Exception {
+        HashMap<String, Object> options = new HashMap<>();
+        options.put("keys", "src/test/resources/keys");
+        Settings settings = new Settings(options);
+
+        List<TokenValidator> validators = new ArrayList<>();
+        validators.add(new TokenSignerValidator(settings));
+        validators.add(new TokenSignatureValidator<>(settings));
+        validators.add(new TokenSignatureValidator<>(settings));
+
+        List<TokenValidator> chain = ValidatorChain.of(validators);
+        Assert.assertEquals(2, chain.size());
+        Assert.assertTrue(chain.get(0) instanceof TokenSignatureValidator);
+        Assert.assertTrue(chain.get(1) instanceof TokenSignerValidator);
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons.mappers;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.Principal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.activemq.jaas.GroupPrincipal;
+import org.apifocal.activemix.commons.Settings;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+
+public class GroupsMapperTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSubjectMembers() throws Exception {
+        GroupsMapper mapper = mapper(groups("admins=bob", "users=bob,alice"));
+
+        Assert.assertEquals(names("admins", "users"), names(mapper.map(claims("bob", "acme"))));
+        Assert.assertEquals(names("users"), names(mapper.map(claims("alice", "acme"))));
+        Assert.assertEquals(names(), names(mapper.map(claims("eve", "acme"))));
+    }
+
+    @Test
+    public void testClaimMembers() throws Exception {
+        GroupsMapper mapper = mapper(groups("tenants=iss:acme", "brokers=aud:broker", "admins=acl:admin"));
+
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+            .subject("alice")
+            .issuer("acme")
+            .audience(Arrays.asList("web", "broker"))
+            .claim("acl", "admin")
+            .build();
+        Assert.assertEquals(names("tenants", "brokers", "admins"), names(mapper.map(claims)));
+        Assert.assertEquals(names("tenants"), names(mapper.map(claims("alice", "acme"))));
+    }
+
+    @Test
+    public void testPooledPrincipals() throws Exception {
+        GroupsMapper mapper = mapper(groups("users=bob,alice"));
+
+        Principal bob = mapper.map(claims("bob", "acme")).iterator().next();
+        Principal alice = mapper.map(claims("alice", "acme")).iterator().next();
+        Assert.assertTrue(bob instanceof GroupPrincipal);
+        Assert.assertSame(bob, alice);
+    }
+
+    @Test
+    public void testReload() throws Exception {
+        File file = groups("users=bob");
+        GroupsMapper mapper = mapper(file);
+        AtomicInteger reloads = new AtomicInteger();
+        mapper.getRules().addListener(reloads::incrementAndGet);
+
+        Files.write(file.toPath(), Arrays.asList("users=alice"), StandardCharsets.UTF_8);
+        mapper.getRules().reload();
+
+        Assert.assertEquals(1, reloads.get());
+        Assert.assertEquals(names(), names(mapper.map(claims("bob", "acme"))));
+        Assert.assertEquals(names("users"), names(mapper.map(claims("alice", "acme"))));
+    }
+
+    @Test
+    public void testFailedReloadKeepsRules() throws Exception {
+        File file = groups("users=bob");
+        GroupsMapper mapper = mapper(file);
+
+        Assert.assertTrue(file.delete());
+        mapper.getRules().reload();
+
+        Assert.assertEquals(names("users"), names(mapper.map(claims("bob", "acme"))));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMissingFile() {
+        new GroupsMapper(new Settings(new HashMap<>()));
+    }
+
+    private File groups(String ... lines) throws Exception {
+        File file = folder.newFile();
+        Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static GroupsMapper mapper(File file) {
+        Map<String, String> options = new HashMap<>();
+        options.put("file", file.getAbsolutePath());
+        options.put("watch", "false");
+        return new GroupsMapper(new Settings(options));
+    }
+
+    private static JWTClaimsSet claims(String subject, String issuer) {
+        return new JWTClaimsSet.Builder().subject(subject).issuer(issuer).build();
+    }
+
+    private static Set<String> names(String ... names) {
+        return new HashSet<>(Arrays.asList(names));
+    }
+
+    private static Set<String> names(Set<Principal> principals) {
+        Set<String> names = new HashSet<>();
+        principals.forEach(principal -> names.add(principal.getName()));
+        return names;
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons.verifiers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.KeyType;
+
+public class AuthorizedKeysStoreTest {
+
+    private static final File KEYS = new File("src/test/resources/keys");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testKeysAreIndexed() throws Exception {
+        AuthorizedKeys keys = AuthorizedKeysStore.forDirectory(KEYS).get("alice");
+        Assert.assertFalse(keys.isEmpty());
+
+        JWK key = keys.getKeys().get(0);
+        Assert.assertNotNull(key.getKeyID());
+        Assert.assertTrue(key.getKeyID().startsWith("SHA256:"));
+        Assert.assertSame(key, keys.get(key.getKeyID()));
+        Assert.assertSame(key, keys.get(key.computeThumbprint().toString()));
+
+        JWKSelector byId = new JWKSelector(new JWKMatcher.Builder().keyType(KeyType.RSA).keyID(key.getKeyID()).build());
+        Assert.assertEquals(1, keys.select(byId).size());
+        JWKSelector byType = new JWKSelector(new JWKMatcher.Builder().keyType(KeyType.EC).build());
+        Assert.assertTrue(keys.select(byType).isEmpty());
+    }
+
+    @Test
+    public void testSnapshotIsReused() throws Exception {
+        AuthorizedKeysStore store = AuthorizedKeysStore.forDirectory(KEYS);
+        Assert.assertSame(store, AuthorizedKeysStore.forDirectory(new File("src/test/resources/keys")));
+        Assert.assertSame(store.get("bob"), store.get("bob"));
+    }
+
+    @Test
+    public void testUnknownIssuer() throws Exception {
+        AuthorizedKeysStore store = AuthorizedKeysStore.forDirectory(KEYS);
+        Assert.assertTrue(store.get("mallory").isEmpty());
+        Assert.assertTrue(store.get("../keys/alice").isEmpty());
+        Assert.assertTrue(store.get(null).isEmpty());
+    }
+
+    @Test
+    public void testRewriteDuringReload() throws Exception {
+        List<String> lines = Files.readAllLines(new File(KEYS, "bob.keys").toPath());
+        List<String> content = new ArrayList<>();
+        while (content.size() * 400 < 2 * SshAuthorizedKeysSet.PARALLEL_THRESHOLD) {
+            content.addAll(lines);
+        }
+        byte[] bytes = String.join("\n", content).getBytes(StandardCharsets.US_ASCII);
+        File directory = folder.newFolder();
+        File dave = new File(directory, "dave" + DirectoryJWKSource.KEY_FILE_EXTENSION);
+        Files.write(dave.toPath(), bytes);
+
+        AuthorizedKeysStore store = AuthorizedKeysStore.forDirectory(directory);
+        AtomicInteger reloads = new AtomicInteger();
+        store.addListener(reloads::incrementAndGet);
+        store.watch(50);
+        try {
+            int count = store.get("dave").getKeys().size();
+            Assert.assertTrue(count > 0);
+
+            // mapped pages vanish while truncated, reads fault until the file is written again
+            AtomicBoolean rewriting = new AtomicBoolean(true);
+            Thread writer = new Thread(() -> {
+                try {
+                    while (rewriting.get()) {
+                        Files.write(dave.toPath(), bytes);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writer.start();
+            long end = System.currentTimeMillis() + 1000;
+            while (System.currentTimeMillis() < end) {
+                store.reload("dave");
+            }
+            rewriting.set(false);
+            writer.join();
+
+            // the watcher survived and reads the final content
+            Files.write(dave.toPath(), bytes);
+            dave.setLastModified(System.currentTimeMillis() + 2000);
+            int seen = reloads.get();
+            for (int i = 0; i < 100 && reloads.get() == seen; i++) {
+                Thread.sleep(50);
+            }
+            Assert.assertTrue(reloads.get() > seen);
+            Assert.assertEquals(count, store.reload("dave").getKeys().size());
+        } finally {
+            store.unwatch();
+        }
+    }
+
+    @Test
+    public void testReloadOnChange() throws Exception {
+        File directory = folder.newFolder();
+        File carol = new File(directory, "carol" + DirectoryJWKSource.KEY_FILE_EXTENSION);
+        Files.copy(new File(KEYS, "alice.keys").toPath(), carol.toPath());
+
+        AuthorizedKeysStore store = AuthorizedKeysStore.forDirectory(directory);
+        store.watch(50);
+        try {
+            AuthorizedKeys before = store.get("carol");
+            Assert.assertFalse(before.isEmpty());
+
+            Files.copy(new File(KEYS, "bob.keys").toPath(), carol.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            carol.setLastModified(before.getLastModified() + 2000);
+            for (int i = 0; i < 100 && store.get("carol") == before; i++) {
+                Thread.sleep(50);
+            }
+            AuthorizedKeys after = store.get("carol");
+            Assert.assertNotSame(before, after);
+            Assert.assertNull(after.get(before.getKeys().get(0).getKeyID()));
+
+            Assert.assertTrue(carol.delete());
+            for (int i = 0; i < 100 && store.get("carol") == after; i++) {
+                Thread.sleep(50);
+            }
+            Assert.assertTrue(store.get("carol").isEmpty());
+        } finally {
+            store.unwatch();
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons.verifiers;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apifocal.activemix.commons.Settings;
+import org.apifocal.activemix.jaas.commons.TokenValidationException;
+import org.apifocal.activemix.jaas.commons.Tokens;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+public class ClaimsValidatorsTest {
+
+    @Test
+    public void testExpiration() throws Exception {
+        ExpirationValidator validator = new ExpirationValidator(settings("skew", "5000"));
+        validator.validate(token(new JWTClaimsSet.Builder().expirationTime(in(Tokens.minutes(1)))), null);
+        validator.validate(token(new JWTClaimsSet.Builder().expirationTime(in(-2000))), null);
+        validator.validate(token(new JWTClaimsSet.Builder()), null);
+
+        TokenValidationException e = fails(validator, new JWTClaimsSet.Builder().expirationTime(in(-Tokens.minutes(1))));
+        Assert.assertEquals(Long.MAX_VALUE, e.getRejectUntil());
+        fails(new ExpirationValidator(settings("required", "true")), new JWTClaimsSet.Builder());
+    }
+
+    @Test
+    public void testNotBefore() throws Exception {
+        NotBeforeValidator validator = new NotBeforeValidator(settings("skew", "5000"));
+        validator.validate(token(new JWTClaimsSet.Builder().notBeforeTime(in(-Tokens.minutes(1)))), null);
+        validator.validate(token(new JWTClaimsSet.Builder().notBeforeTime(in(2000))), null);
+
+        Date notBefore = in(Tokens.minutes(1));
+        TokenValidationException e = fails(validator, new JWTClaimsSet.Builder().notBeforeTime(notBefore));
+        Assert.assertEquals(notBefore.getTime() - 5000, e.getRejectUntil());
+    }
+
+    @Test
+    public void testAudience() throws Exception {
+        AudienceValidator validator = new AudienceValidator(settings("audience", "orders, billing"));
+        validator.validate(token(new JWTClaimsSet.Builder().audience("billing")), null);
+
+        fails(validator, new JWTClaimsSet.Builder().audience("hello-world"));
+        fails(validator, new JWTClaimsSet.Builder());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAudienceRequired() throws Exception {
+        new AudienceValidator(settings("required", "false"));
+    }
+
+    private static TokenValidationException fails(AbstractClaimsValidator validator, JWTClaimsSet.Builder claims) throws Exception {
+        try {
+            validator.validate(token(claims), null);
+        } catch (TokenValidationException e) {
+            return e;
+        }
+        Assert.fail("Token should be rejected");
+        return null;
+    }
+
+    private static SignedJWT token(JWTClaimsSet.Builder claims) {
+        return new SignedJWT(new JWSHeader(JWSAlgorithm.RS256), claims.subject("user").build());
+    }
+
+    private static Date in(long millis) {
+        // JWT dates carry whole seconds only
+        return new Date((System.currentTimeMillis() + millis) / 1000 * 1000);
+    }
+
+    private static Settings settings(String key, String value) {
+        Map<String, Object> options = new HashMap<>();
+        options.put(key, value);
+        return new Settings(options);
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons.verifiers;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.nimbusds.jose.jwk.JWK;
+
+public class SshAuthorizedKeysSetTest {
+
+    private static final File KEYS = new File("src/test/resources/keys");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLargeFile() throws Exception {
+        List<String> lines = new ArrayList<>();
+        lines.addAll(Files.readAllLines(new File(KEYS, "bob.keys").toPath()));
+        lines.addAll(Files.readAllLines(new File(KEYS, "dave.keys").toPath()));
+        List<JWK> expected = SshAuthorizedKeysSet.read(new File(KEYS, "bob.keys"));
+        expected.addAll(SshAuthorizedKeysSet.read(new File(KEYS, "dave.keys")));
+
+        File large = folder.newFile("large.keys");
+        List<String> content = new ArrayList<>();
+        while (content.size() * 400 < 2 * SshAuthorizedKeysSet.PARALLEL_THRESHOLD) {
+            content.add("# keys " + content.size());
+            content.addAll(lines);
+        }
+        Files.write(large.toPath(), content, StandardCharsets.US_ASCII);
+        Assert.assertTrue(large.length() > SshAuthorizedKeysSet.PARALLEL_THRESHOLD);
+
+        // chunks are parsed in parallel, but keys come back in the order of the file
+        List<JWK> keys = SshAuthorizedKeysSet.read(large);
+        Assert.assertEquals(content.size() / (lines.size() + 1) * expected.size(), keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            Assert.assertEquals(expected.get(i % expected.size()).getKeyID(), keys.get(i).getKeyID());
+        }
+
+        AuthorizedKeys authorizedKeys = AuthorizedKeys.load(large);
+        Assert.assertEquals(keys.size(), authorizedKeys.getKeys().size());
+        Assert.assertNotNull(authorizedKeys.get(expected.get(0).getKeyID()));
+    }
+
+}
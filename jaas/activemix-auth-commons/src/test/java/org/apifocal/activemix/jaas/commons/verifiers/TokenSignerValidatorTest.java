@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.commons.verifiers;
+
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.interfaces.RSAPrivateKey;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apifocal.activemix.commons.Settings;
+import org.apifocal.activemix.jaas.commons.Keys;
+import org.apifocal.activemix.jaas.commons.TokenValidationException;
+import org.apifocal.activemix.jaas.commons.Tokens;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.util.Base64URL;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+public class TokenSignerValidatorTest {
+
+    @Test
+    public void testValidSignature() throws Exception {
+        TokenSignerValidator validator = validator();
+        SignedJWT token = token("bob/id_rsa-bob");
+
+        validator.validate(token, new TokenSecurityContext("bob"));
+        // second time around the key which verified the first token is tried first
+        validator.validate(token, new TokenSecurityContext("bob"));
+    }
+
+    @Test
+    public void testEcSignature() throws Exception {
+        validator().validate(token("dave/id_ecdsa-dave"), new TokenSecurityContext("dave"));
+    }
+
+    @Test
+    public void testEd25519Signature() throws Exception {
+        validator().validate(token("dave/id_ed25519-dave"), new TokenSecurityContext("dave"));
+    }
+
+    @Test(expected = TokenValidationException.class)
+    public void testKeyOfOtherIssuer() throws Exception {
+        validator().validate(token("bob/id_rsa-bob"), new TokenSecurityContext("alice"));
+    }
+
+    @Test(expected = TokenValidationException.class)
+    public void testUnknownKey() throws Exception {
+        validator().validate(token("alice/id_rsa-alice"), new TokenSecurityContext("bob"));
+    }
+
+    @Test
+    public void testKeyIdInHeader() throws Exception {
+        SignedJWT token = token("bob/id_rsa-bob");
+        KeyPair keyPair = keyPair("bob/id_rsa-bob");
+        String fingerprint = Keys.fingerprint(keyPair.getPublic(), Keys.defaultAlgorithm());
+
+        Assert.assertEquals(fingerprint, token.getHeader().getKeyID());
+        Assert.assertEquals(fingerprint, AbstractSignerValidator.keyId(token.getHeader()));
+
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(keyPair.getPublic().getEncoded());
+        JWSHeader header = new JWSHeader.Builder(JWSAlgorithm.RS256).x509CertSHA256Thumbprint(Base64URL.encode(digest)).build();
+        Assert.assertEquals(fingerprint, AbstractSignerValidator.keyId(header));
+    }
+
+    @Test
+    public void testForeignKeyId() throws Exception {
+        KeyPair keyPair = keyPair("bob/id_rsa-bob");
+        JWTClaimsSet.Builder claims = new JWTClaimsSet.Builder();
+        Tokens.subject(claims, "user");
+        SignedJWT token = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID("bob-2020").build(), claims.build());
+        token.sign(new RSASSASigner((RSAPrivateKey) keyPair.getPrivate()));
+
+        validator().validate(token, new TokenSecurityContext("bob"));
+    }
+
+    private static TokenSignerValidator validator() {
+        Map<String, Object> options = new HashMap<>();
+        options.put("keys", "src/test/resources/keys");
+        options.put("watch", "false");
+        return new TokenSignerValidator(new Settings(options));
+    }
+
+    private static SignedJWT token(String key) throws Exception {
+        JWTClaimsSet.Builder claims = new JWTClaimsSet.Builder();
+        Tokens.subject(claims, "user");
+        String privkey = Resources.toString(Resources.getResource("./ssh/" + key), Charsets.UTF_8);
+        return Tokens.parseToken(Tokens.createToken(claims.build(), privkey, null));
+    }
+
+    private static KeyPair keyPair(String key) throws Exception {
+        return Keys.readKeyPair(Resources.toString(Resources.getResource("./ssh/" + key), Charsets.UTF_8), null);
+    }
+
+}
@@ -15,16 +15,19 @@
  */
 package org.apifocal.activemix.jaas.token;
 
-import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
 import com.nimbusds.jose.proc.SecurityContext;
 import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.SignedJWT;
 
 import org.apifocal.activemix.jaas.commons.ClaimMapper;
-import org.apifocal.activemix.commons.Settings;
-import org.apifocal.activemix.commons.SettingsBuilder;
+import org.apifocal.activemix.jaas.commons.FailureLimiter;
+import org.apifocal.activemix.jaas.commons.RejectedTokenCache;
 import org.apifocal.activemix.jaas.commons.TokenValidationException;
 import org.apifocal.activemix.jaas.commons.TokenValidator;
+import org.apifocal.activemix.jaas.commons.ValidationEngine;
+import org.apifocal.activemix.jaas.commons.ValidationUnavailableException;
+import org.apifocal.activemix.jaas.commons.VerifiedTokenCache;
 import org.apifocal.activemix.jaas.commons.verifiers.TokenSecurityContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,9 +39,11 @@ import javax.security.auth.spi.LoginModule;
 import java.io.IOException;
 import java.security.Principal;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
 
 /**
@@ -65,19 +70,38 @@ public class TokenLoginModule implements LoginModule {
     public static final String CLAIM_MAPPERS_PACKAGE = CLAIM_MAPPERS_PREFIX + ".package";
     public static final String CLAIM_MAPPERS_CLASSES = CLAIM_MAPPERS_PREFIX + ".classes";
 
+    public static final String CACHE_PREFIX = "cache";
+    public static final String CACHE_ENABLED = CACHE_PREFIX + ".enabled";
+
+    public static final String REJECTED_PREFIX = "rejected";
+    public static final String REJECTED_ENABLED = REJECTED_PREFIX + ".enabled";
+
+    public static final String LIMIT_PREFIX = "limit";
+    public static final String LIMIT_ENABLED = LIMIT_PREFIX + ".enabled";
+    public static final String LIMIT_USER = LIMIT_PREFIX + ".user";
+    public static final String LIMIT_ISSUER = LIMIT_PREFIX + ".issuer";
+
+    public static final String ASYNC_PREFIX = "async";
+    public static final String ASYNC_ENABLED = ASYNC_PREFIX + ".enabled";
+
     private static final Logger LOG = LoggerFactory.getLogger(TokenLoginModule.class);
 
     private CallbackHandler callbackHandler;
     private Subject subject;
-    private final Set<Principal> principals = Sets.newConcurrentHashSet();
+    private Set<Principal> principals = Collections.emptySet();
 
     private String user;
-    private Settings settings;
+    private TokenRealm realm;
     private boolean verbose;
     private boolean userAsTenant;
     @SuppressWarnings("rawtypes")
     protected List<TokenValidator> validators;
     protected List<ClaimMapper> claimMappers;
+    private VerifiedTokenCache verifiedTokens;
+    private RejectedTokenCache rejectedTokens;
+    private FailureLimiter userLimiter;
+    private FailureLimiter issuerLimiter;
+    private ValidationEngine engine;
     private JWTClaimsSet claims;
 
 
@@ -85,26 +109,17 @@ public class TokenLoginModule implements LoginModule {
         this.subject = subject;
         this.callbackHandler = callbackHandler;
 
-        settings = new Settings(options);
-
-        verbose = settings.booleanOption("debug");
-        userAsTenant = settings.booleanOption("userAsTenant", false);
-
-        String verifiersPackage = settings.stringOption(VERIFIERS_PACKAGE, "org.apifocal.amx.jaas.token.verifiers");
-        Optional<String> verifiersClasses = settings.stringOption(VERIFIERS_CLASSES);
-
-        String verifierNames = verifiersClasses.orElseThrow(SettingsBuilder.requiredPropertyMissing(VERIFIERS_CLASSES));
-        this.validators = SettingsBuilder.createObjects(getClass().getClassLoader(), settings, verifiersPackage, verifierNames, TokenValidator.class, VERIFIERS_PREFIX);
-
-        String mappersPackage = settings.stringOption(CLAIM_MAPPERS_PACKAGE, "org.apifocal.amx.jaas.token.mappers");
-        Optional<String> mappersClasses = settings.stringOption(CLAIM_MAPPERS_CLASSES);
-
-        String mapperNames = mappersClasses.orElseThrow(SettingsBuilder.requiredPropertyMissing(CLAIM_MAPPERS_CLASSES));
-        this.claimMappers = SettingsBuilder.createObjects(getClass().getClassLoader(), settings, mappersPackage, mapperNames, ClaimMapper.class, CLAIM_MAPPERS_PREFIX);
-
-        if (validators.isEmpty() || claimMappers.isEmpty()) {
-            throw new IllegalStateException("Both validators and claim mappers must be set");
-        }
+        // validators, mappers and caches are built once per configuration, not per login
+        realm = TokenRealm.forOptions(getClass().getClassLoader(), options);
+        verbose = realm.isVerbose();
+        userAsTenant = realm.isUserAsTenant();
+        validators = realm.getValidators();
+        claimMappers = realm.getClaimMappers();
+        verifiedTokens = realm.getVerifiedTokens();
+        rejectedTokens = realm.getRejectedTokens();
+        userLimiter = realm.getUserLimiter();
+        issuerLimiter = realm.getIssuerLimiter();
+        engine = realm.getEngine();
 
         user = null;
     }
@@ -124,32 +139,86 @@ public class TokenLoginModule implements LoginModule {
         user = ncb.getName();
         char[] token = pcb.getPassword();
         token = token != null ? token : new char[0];
+        String credential = new String(token);
+
+        // the issuer is part of the token, unless the user name stands for it
+        String issuer = userAsTenant ? user : null;
+        HashCode key = verifiedTokens != null || rejectedTokens != null
+            ? VerifiedTokenCache.key(credential, issuer)
+            : null;
+        VerifiedTokenCache.Entry verified = verifiedTokens != null ? verifiedTokens.lookup(key) : null;
+        if (verified != null) {
+            // principals of a known token were mapped when it was first seen
+            this.claims = verified.getClaims();
+            this.principals = verified.getPrincipals();
+            return true;
+        }
+        if (rejectedTokens != null && rejectedTokens.isRejected(key)) {
+            throw new LoginException("Invalid token");
+        }
+        // the issuer is limited before any parsing when known, the subject only once the token is parsed
+        if (issuerLimiter != null && issuer != null && issuerLimiter.isLimited(issuer)) {
+            throw new LoginException("Too many failed logins");
+        }
 
         try {
-            return (this.claims = processToken(new String(token))) != null;
+            this.claims = processToken(credential, key);
+            if (claims == null) {
+                return false;
+            }
+            this.principals = principals(claims);
+            if (verifiedTokens != null) {
+                verifiedTokens.put(key, claims, principals);
+            }
+            return true;
         } catch (ParseException e) {
             if (verbose) {
-                LOG.warn("Failed to process token", e);
+                LOG.warn("Failed to process token: {}", e.getMessage());
             }
+            failed(key, 0L);
             throw new LoginException("Invalid token");
         }
     }
 
     @SuppressWarnings({ "rawtypes", "unchecked" })
-    private JWTClaimsSet processToken(String token) throws ParseException, LoginException {
+    private JWTClaimsSet processToken(String token, HashCode key) throws ParseException, LoginException {
         SignedJWT parsedToken = SignedJWT.parse(token);
 
-        SecurityContext securityContext;
         // TODO: further refactoring; there is no need for 'userAsTenant', the token should have user == issuer
-        securityContext = new TokenSecurityContext(userAsTenant ? user : parsedToken.getJWTClaimsSet().getIssuer());
+        String issuer = userAsTenant ? user : parsedToken.getJWTClaimsSet().getIssuer();
+        String subject = parsedToken.getJWTClaimsSet().getSubject();
+        if (userLimiter != null && (userLimiter.isLimited(subject) || (!userAsTenant && issuerLimiter.isLimited(issuer)))) {
+            throw new LoginException("Too many failed logins");
+        }
+        SecurityContext securityContext = new TokenSecurityContext(issuer);
+        List<TokenValidator> passed = new ArrayList<>(validators.size());
+
+        if (engine != null) {
+            try {
+                engine.validate(validators, parsedToken, securityContext, passed);
+            } catch (ValidationUnavailableException e) {
+                unavailable(e);
+                throw new LoginException("Token could not be validated: " + e.getMessage());
+            } catch (TokenValidationException e) {
+                invalid(e);
+                failed(key, e.getRejectUntil());
+                charge(parsedToken, securityContext, passed);
+                throw new LoginException("Token didn't pass validation: " + e.getMessage());
+            }
+            return parsedToken.getJWTClaimsSet();
+        }
 
         for (TokenValidator validator : validators) {
             try {
                 validator.validate(parsedToken, securityContext);
+                passed.add(validator);
+            } catch (ValidationUnavailableException e) {
+                unavailable(e);
+                throw new LoginException("Token could not be validated by " + validator.getClass().getName());
             } catch (TokenValidationException e) {
-                if (verbose) {
-                    LOG.warn("Detected invalid token", e);
-                }
+                invalid(e);
+                failed(key, e.getRejectUntil());
+                charge(parsedToken, securityContext, passed);
                 throw new LoginException("Token didn't pass " + validator.getClass().getName() + " validation");
             }
         }
@@ -157,28 +226,89 @@ public class TokenLoginModule implements LoginModule {
         return parsedToken.getJWTClaimsSet();
     }
 
+    private void invalid(TokenValidationException e) {
+        if (verbose) {
+            // stack traces only help debugging validators, not clients retrying a bad token
+            LOG.warn("Detected invalid token: {}", e.getMessage());
+            LOG.debug("Token validation failure", e);
+        }
+    }
+
+    private void unavailable(ValidationUnavailableException e) {
+        // not the client's fault, the same token may pass on the next attempt
+        LOG.warn("Cannot validate token: {}", e.getMessage());
+        LOG.debug("Token validation unavailable", e);
+    }
+
+    private void failed(HashCode key, long rejectUntil) {
+        if (rejectedTokens != null) {
+            if (rejectUntil > 0) {
+                rejectedTokens.reject(key, rejectUntil);
+            } else {
+                rejectedTokens.reject(key);
+            }
+        }
+    }
+
+    /**
+     * Charges the limiters of the subject and issuer of a rejected token, but only if a validator it
+     * passed before failing showed that issuer really issued it; anybody can send tokens naming any
+     * subject and issuer. Tokens failing before their issuer is verified are left to the rejected
+     * token cache, no validator is run again to find out who sent them.
+     *
+     * @param passed the validators the token passed before it failed
+     */
+    @SuppressWarnings("rawtypes")
+    private void charge(SignedJWT token, SecurityContext securityContext, List<TokenValidator> passed) throws ParseException {
+        if (userLimiter != null && passed.stream().anyMatch(TokenValidator::verifiesIssuer)) {
+            userLimiter.failed(token.getJWTClaimsSet().getSubject());
+            issuerLimiter.failed(((TokenSecurityContext) securityContext).getIssuer().orElse(null));
+        }
+    }
+
+    private Set<Principal> principals(JWTClaimsSet claims) {
+        Set<Principal> mapped = new LinkedHashSet<>();
+        for (ClaimMapper mapper : claimMappers) {
+            mapper.map(claims, mapped);
+        }
+        return Collections.unmodifiableSet(mapped);
+    }
+
     public boolean commit() throws LoginException {
         boolean success = claims != null;
         if (success) {
-            for (ClaimMapper mapper : claimMappers) {
-                principals.addAll(mapper.map(claims));
-            }
-
             subject.getPrincipals().addAll(principals);
             return true;
         }
         return false;
     }
 
+    protected TokenRealm realm() {
+        return realm;
+    }
+
+    protected VerifiedTokenCache verifiedTokenCache() {
+        return verifiedTokens;
+    }
+
+    protected RejectedTokenCache rejectedTokenCache() {
+        return rejectedTokens;
+    }
+
+    protected ValidationEngine validationEngine() {
+        return engine;
+    }
+
     public boolean abort() throws LoginException {
         user = null;
         claims = null;
+        principals = Collections.emptySet();
         return true;
     }
 
     public boolean logout() throws LoginException {
         subject.getPrincipals().removeAll(principals);
-        principals.clear();
+        principals = Collections.emptySet();
         user = null;
         claims = null;
         // if (verbose)...LOG.debug("logout");
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.token;
+
+import static org.apifocal.activemix.jaas.token.TokenLoginModule.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apifocal.activemix.commons.Settings;
+import org.apifocal.activemix.commons.SettingsBuilder;
+import org.apifocal.activemix.jaas.commons.ClaimMapper;
+import org.apifocal.activemix.jaas.commons.CoarseClock;
+import org.apifocal.activemix.jaas.commons.FailureLimiter;
+import org.apifocal.activemix.jaas.commons.RejectedTokenCache;
+import org.apifocal.activemix.jaas.commons.TokenValidator;
+import org.apifocal.activemix.jaas.commons.ValidationEngine;
+import org.apifocal.activemix.jaas.commons.ValidatorChain;
+import org.apifocal.activemix.jaas.commons.VerifiedTokenCache;
+import org.apifocal.activemix.jaas.commons.mappers.GroupRules;
+import org.apifocal.activemix.jaas.commons.mappers.GroupsMapper;
+import org.apifocal.activemix.jaas.commons.verifiers.TokenSignerValidator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Everything a {@link TokenLoginModule} configuration needs to process logins: validators, claim
+ * mappers, caches, limiters and the validation engine.
+ *
+ * JAAS creates a module instance per login. Realms are built once per distinct set of module options
+ * and then handed to every module instance configured with those options, so initializing a module
+ * is a map lookup. All parts of a realm are shared between concurrent logins and must be thread safe.
+ *
+ * Verified tokens are cached with the principals their claims mapped to, so the cache is dropped
+ * whenever the keys of a {@link TokenSignerValidator} or the group rules of a {@link GroupsMapper}
+ * are reloaded.
+ */
+public final class TokenRealm {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TokenRealm.class);
+    private static final ConcurrentMap<Map<String, ?>, TokenRealm> REALMS = new ConcurrentHashMap<>();
+
+    private final Settings settings;
+    private final boolean verbose;
+    private final boolean userAsTenant;
+    @SuppressWarnings("rawtypes")
+    private final List<TokenValidator> validators;
+    private final List<ClaimMapper> claimMappers;
+    private final VerifiedTokenCache verifiedTokens;
+    private final RejectedTokenCache rejectedTokens;
+    private final FailureLimiter userLimiter;
+    private final FailureLimiter issuerLimiter;
+    private final ValidationEngine engine;
+    private final List<Runnable> listeners = new ArrayList<>();
+    private final Runnable invalidator = this::invalidate;
+
+    TokenRealm(ClassLoader classLoader, Settings settings) {
+        this.settings = settings;
+        this.verbose = settings.booleanOption("debug");
+        this.userAsTenant = settings.booleanOption("userAsTenant", false);
+
+        String verifiersPackage = settings.stringOption(VERIFIERS_PACKAGE, "org.apifocal.amx.jaas.token.verifiers");
+        String verifierNames = settings.stringOption(VERIFIERS_CLASSES).orElseThrow(SettingsBuilder.requiredPropertyMissing(VERIFIERS_CLASSES));
+        this.validators = ValidatorChain.of(SettingsBuilder.createObjects(classLoader, settings, verifiersPackage, verifierNames, TokenValidator.class, VERIFIERS_PREFIX));
+
+        String mappersPackage = settings.stringOption(CLAIM_MAPPERS_PACKAGE, "org.apifocal.amx.jaas.token.mappers");
+        String mapperNames = settings.stringOption(CLAIM_MAPPERS_CLASSES).orElseThrow(SettingsBuilder.requiredPropertyMissing(CLAIM_MAPPERS_CLASSES));
+        this.claimMappers = Collections.unmodifiableList(SettingsBuilder.createObjects(classLoader, settings, mappersPackage, mapperNames, ClaimMapper.class, CLAIM_MAPPERS_PREFIX));
+
+        if (validators.isEmpty() || claimMappers.isEmpty()) {
+            throw new IllegalStateException("Both validators and claim mappers must be set");
+        }
+
+        this.verifiedTokens = settings.booleanOption(CACHE_ENABLED, true) ? new VerifiedTokenCache(settings.subset(CACHE_PREFIX)) : null;
+        this.rejectedTokens = settings.booleanOption(REJECTED_ENABLED, true) ? new RejectedTokenCache(settings.subset(REJECTED_PREFIX)) : null;
+        if (settings.booleanOption(LIMIT_ENABLED, false)) {
+            this.userLimiter = new FailureLimiter(settings.subset(LIMIT_USER), 10, 1.0);
+            this.issuerLimiter = new FailureLimiter(settings.subset(LIMIT_ISSUER), 100, 10.0);
+        } else {
+            this.userLimiter = null;
+            this.issuerLimiter = null;
+        }
+        this.engine = settings.booleanOption(ASYNC_ENABLED, false) ? new ValidationEngine(settings.subset(ASYNC_PREFIX)) : null;
+
+        if (verifiedTokens != null || rejectedTokens != null) {
+            // a new key may verify tokens rejected so far, a revoked one must not keep accepting tokens
+            for (TokenValidator<?, ?> validator : validators) {
+                if (validator instanceof TokenSignerValidator) {
+                    TokenSignerValidator signer = (TokenSignerValidator) validator;
+                    signer.addListener(invalidator);
+                    listeners.add(() -> signer.removeListener(invalidator));
+                }
+            }
+        }
+        if (verifiedTokens != null) {
+            for (ClaimMapper mapper : claimMappers) {
+                if (mapper instanceof GroupsMapper) {
+                    GroupRules rules = ((GroupsMapper) mapper).getRules();
+                    rules.addListener(invalidator);
+                    listeners.add(() -> rules.removeListener(invalidator));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the realm of the given module options, built on first use with classes from the given class loader
+     */
+    public static TokenRealm forOptions(ClassLoader classLoader, Map<String, ?> options) {
+        // options maps compare by content, whatever their type; only a realm being created needs a copy
+        TokenRealm realm = REALMS.get(options);
+        if (realm == null) {
+            realm = REALMS.computeIfAbsent(Collections.unmodifiableMap(new HashMap<>(options)), key -> {
+                LOG.debug("Creating token realm for {}", key.keySet());
+                return new TokenRealm(classLoader, new Settings(key));
+            });
+        }
+        return realm;
+    }
+
+    /**
+     * Forgets all realms, stops watching their keys and stops the clock ticker; logins which start
+     * afterwards build new ones from their options.
+     */
+    public static void clear() {
+        REALMS.values().forEach(TokenRealm::close);
+        REALMS.clear();
+        TokenSignerValidator.clear();
+        CoarseClock.stop();
+    }
+
+    public Settings getSettings() {
+        return settings;
+    }
+
+    public boolean isVerbose() {
+        return verbose;
+    }
+
+    public boolean isUserAsTenant() {
+        return userAsTenant;
+    }
+
+    @SuppressWarnings("rawtypes")
+    public List<TokenValidator> getValidators() {
+        return validators;
+    }
+
+    public List<ClaimMapper> getClaimMappers() {
+        return claimMappers;
+    }
+
+    public VerifiedTokenCache getVerifiedTokens() {
+        return verifiedTokens;
+    }
+
+    public RejectedTokenCache getRejectedTokens() {
+        return rejectedTokens;
+    }
+
+    public FailureLimiter getUserLimiter() {
+        return userLimiter;
+    }
+
+    public FailureLimiter getIssuerLimiter() {
+        return issuerLimiter;
+    }
+
+    public ValidationEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * @return number of logins refused because the token failed validation before
+     */
+    public long rejectedByCache() {
+        return rejectedTokens != null ? rejectedTokens.hits() : 0L;
+    }
+
+    /**
+     * @return number of logins refused because of too many failed logins of the subject or issuer
+     */
+    public long rejectedByLimit() {
+        return userLimiter != null ? userLimiter.limited() + issuerLimiter.limited() : 0L;
+    }
+
+    private void invalidate() {
+        if (verifiedTokens != null) {
+            LOG.debug("Keys or group rules changed, dropping {} verified tokens", verifiedTokens.size());
+            verifiedTokens.clear();
+        }
+        if (rejectedTokens != null) {
+            LOG.debug("Keys or group rules changed, dropping {} rejected tokens", rejectedTokens.size());
+            rejectedTokens.clear();
+        }
+    }
+
+    private void close() {
+        listeners.forEach(Runnable::run);
+        if (engine != null) {
+            engine.shutdown();
+        }
+    }
+
+}
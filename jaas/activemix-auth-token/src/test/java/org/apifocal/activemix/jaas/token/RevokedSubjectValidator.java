@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.token;
+
+import java.text.ParseException;
+
+import org.apifocal.activemix.commons.Settings;
+import org.apifocal.activemix.jaas.commons.TokenValidationException;
+import org.apifocal.activemix.jaas.commons.TokenValidator;
+
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.SignedJWT;
+
+/**
+ * Test validator rejecting the tokens of the configured 'subject'. Of default cost, it runs after
+ * the signature checks configured before it.
+ */
+public class RevokedSubjectValidator implements TokenValidator<SignedJWT, SecurityContext> {
+
+    private final String subject;
+
+    public RevokedSubjectValidator(Settings settings) {
+        this.subject = settings.stringOption("subject").orElse(null);
+    }
+
+    @Override
+    public void validate(SignedJWT token, SecurityContext securityContext) throws TokenValidationException {
+        try {
+            if (subject != null && subject.equals(token.getJWTClaimsSet().getSubject())) {
+                throw new TokenValidationException("Subject " + subject + " revoked");
+            }
+        } catch (ParseException e) {
+            throw new TokenValidationException("Invalid token claims", e);
+        }
+    }
+
+}
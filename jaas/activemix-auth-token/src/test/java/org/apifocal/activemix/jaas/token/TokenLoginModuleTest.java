@@ -15,8 +15,13 @@
  */
 package org.apifocal.activemix.jaas.token;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.security.auth.Subject;
 import javax.security.auth.callback.Callback;
@@ -29,13 +34,22 @@ import javax.security.auth.login.LoginException;
 
 import org.apifocal.activemix.jaas.commons.IssuerPrincipal;
 import org.apifocal.activemix.jaas.commons.SubjectPrincipal;
+import org.apifocal.activemix.jaas.commons.verifiers.AudienceValidator;
+import org.apifocal.activemix.jaas.commons.verifiers.AuthorizedKeysStore;
+import org.apifocal.activemix.jaas.commons.verifiers.TokenSignerValidator;
+import org.junit.After;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.io.Resources;
 
+import static org.apifocal.activemix.jaas.token.TokenLoginModule.*;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 /**
@@ -51,14 +65,174 @@ public class TokenLoginModuleTest {
         }
     }
 
-    @Test
-    public void testLogin() throws Exception {
-        // --user foo --issuer bar --app test
-        String token = "eyJhbGciOiJSUzI1NiJ9." +
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // --user foo --issuer bar --app test
+    private static final String TOKEN = "eyJhbGciOiJSUzI1NiJ9." +
             "eyJzdWIiOiJmb28iLCJpc3MiOiJiYXIifQ." +
             "WQl3XKlooF-wIYK3ibYyT5AueKN9TSulBLoIdyj90sXmU9boa5yUCVHrdRI5BgC1Ep0RHbAlxGO1-e_5Z-yY81Li-wvf0MIg6jbQgQOJ1IDrDcfLS8VvnHqI5bpk5BhFaRkIQsyCvz7zbKGLqzTuI3VFvjUT6CJwSGhWdt19aJei2FiIZ6iPasVBfdZyJNmCxcKAZKdLlG2GWmXMYomVjSkitxM1SsjWGtu68ANKkkkUjdOoU-Q7v9hLb9Pa9VMIZoAQV4l__lvA-1lD2d11ezXa0I7nnoGri193Lvg1gBUtw7zzxr3Gmy0vSyjN4hegwXqvyBSIWW9sESaPYVyY2PIgMiFxJRhylqERcKOcT8Y8E43DYYkX5SdOsmwoOmScMZH7qoZfkWtMFc2rV72JyyCbjy16U-rjVFU-7hW8x3aaNEfMiXpJWaT9fU7yQYWmUO7w9TvzpH2YW3zX3qR-b9_pZaUBQvppzJmqY-_JTSR375gI3rMNS6mPHMEkMDORE1CuN7A138tXOypV3JvB3lV6AQeYMMBgepefxPwakj8A5LDDFpsiYbBRun3MHRvh8oAlr6xKzhogtbiUYo2-RG8LSEcToNpdbPqwJHCV7BtGSnfCHzI3ZsdvC9-Q4W0UwAxUpNEsgRkd178sMLuF4Ir1XwGzH05VXYKBKY0r2uY";
 
-        LoginContext context = new LoginContext("TokenLogin", new UserTokenHandler("alice", token));
+    @Test
+    public void testLogin() throws Exception {
+        login("TokenLogin");
+    }
+
+    @Test
+    public void testAsyncLogin() throws Exception {
+        login("AsyncTokenLogin");
+    }
+
+    @Test
+    public void testRejectedTokenCached() throws Exception {
+        Map<String, String> options = options();
+
+        // signed by alice, not by bob
+        assertLoginFails(options, "bob", TOKEN, "Token didn't pass " + TokenSignerValidator.class.getName() + " validation");
+        assertLoginFails(options, "bob", TOKEN, "Invalid token");
+        assertEquals(1, realm(options).rejectedByCache());
+    }
+
+    @Test
+    public void testKeysReloadDropsRejectedTokens() throws Exception {
+        File keys = folder.newFolder();
+        Files.copy(Paths.get("src/test/resources/keys/bob.keys"), keys.toPath().resolve("bob.keys"));
+        Map<String, String> options = options();
+        options.put(VERIFIERS_PREFIX + ".TokenSignerValidator.keys", keys.getAbsolutePath());
+        options.put(VERIFIERS_PREFIX + ".TokenSignerValidator.watch", "false");
+
+        assertLoginFails(options, "alice", TOKEN, "Token didn't pass " + TokenSignerValidator.class.getName() + " validation");
+        assertLoginFails(options, "alice", TOKEN, "Invalid token");
+
+        // the key of alice is added, her token is not to be rejected any longer
+        Files.copy(Paths.get("src/test/resources/keys/alice.keys"), keys.toPath().resolve("alice.keys"));
+        AuthorizedKeysStore.forDirectory(keys).reload("alice");
+        assertTrue(module(options, "alice", TOKEN).login());
+    }
+
+    @Test
+    public void testForgedTokensDoNotLockOut() throws Exception {
+        Map<String, String> options = limited(options(), 1);
+        String forged = TOKEN.substring(0, TOKEN.length() - 4) + "AAAA";
+
+        for (int i = 0; i < 3; i++) {
+            assertLoginFails(options, "alice", forged, "Token didn't pass " + TokenSignerValidator.class.getName() + " validation");
+        }
+        assertTrue(module(options, "alice", TOKEN).login());
+        assertEquals(0, realm(options).rejectedByLimit());
+    }
+
+    @Test
+    public void testLimitedAfterSignedFailures() throws Exception {
+        Map<String, String> options = limited(options(), 2);
+        options.put(VERIFIERS_CLASSES, "TokenSignatureValidator,TokenSignerValidator," + RevokedSubjectValidator.class.getName());
+        options.put(VERIFIERS_PREFIX + ".RevokedSubjectValidator.subject", "foo");
+
+        // properly signed, but revoked
+        String message = "Token didn't pass " + RevokedSubjectValidator.class.getName() + " validation";
+        assertLoginFails(options, "alice", TOKEN, message);
+        assertLoginFails(options, "alice", TOKEN, message);
+        assertLoginFails(options, "alice", TOKEN, "Too many failed logins");
+        assertEquals(1, realm(options).rejectedByLimit());
+    }
+
+    @Test
+    public void testNotLimitedBeforeSignatureCheck() throws Exception {
+        Map<String, String> options = limited(options(), 1);
+        options.put(VERIFIERS_CLASSES, "TokenSignatureValidator,AudienceValidator,TokenSignerValidator");
+        options.put(VERIFIERS_PREFIX + ".AudienceValidator.audience", "other");
+
+        // the audience is checked before the signature, nothing tells who sent the token
+        for (int i = 0; i < 3; i++) {
+            assertLoginFails(options, "alice", TOKEN, "Token didn't pass " + AudienceValidator.class.getName() + " validation");
+        }
+        assertEquals(0, realm(options).rejectedByLimit());
+    }
+
+    @Test
+    public void testIssuerLimitedBeforeParsing() throws Exception {
+        Map<String, String> options = limited(options(), 1);
+        realm(options).getIssuerLimiter().failed("alice");
+
+        // the user names the issuer, the token is not even looked at
+        assertLoginFails(options, "alice", "not a token", "Too many failed logins");
+        assertEquals(1, realm(options).rejectedByLimit());
+    }
+
+    @Test
+    public void testVerifiedTokenNotLimited() throws Exception {
+        Map<String, String> options = limited(options(), 1);
+        assertTrue(module(options, "alice", TOKEN).login());
+
+        TokenRealm realm = realm(options);
+        realm.getUserLimiter().failed("foo");
+        realm.getIssuerLimiter().failed("alice");
+        assertTrue(module(options, "alice", TOKEN).login());
+        assertEquals(0, realm.rejectedByLimit());
+    }
+
+    @Test
+    public void testUnavailableValidationNotCached() throws Exception {
+        Map<String, String> options = options();
+        options.put(ASYNC_ENABLED, "true");
+        options.put(ASYNC_PREFIX + ".maxPending", "0");
+
+        // the engine has no room for the signature check, which says nothing about the token
+        for (int i = 0; i < 2; i++) {
+            assertLoginFails(options, "alice", TOKEN, "Token could not be validated: Too many pending token validations");
+        }
+        assertEquals(0, realm(options).getRejectedTokens().size());
+        assertEquals(0, realm(options).rejectedByCache());
+    }
+
+    @After
+    public void tearDown() {
+        TokenRealm.clear();
+    }
+
+    private static Map<String, String> options() {
+        Map<String, String> options = new HashMap<>();
+        options.put("userAsTenant", "true");
+        options.put(VERIFIERS_PACKAGE, "org.apifocal.activemix.jaas.commons.verifiers");
+        options.put(VERIFIERS_CLASSES, "TokenSignatureValidator,TokenSignerValidator");
+        options.put(VERIFIERS_PREFIX + ".TokenSignerValidator.keys", "src/test/resources/keys");
+        options.put(CLAIM_MAPPERS_PACKAGE, "org.apifocal.activemix.jaas.commons.mappers");
+        options.put(CLAIM_MAPPERS_CLASSES, "SubjectMapper,IssuerMapper");
+        return options;
+    }
+
+    private static Map<String, String> limited(Map<String, String> options, int burst) {
+        options.put(LIMIT_ENABLED, "true");
+        options.put(LIMIT_USER + ".burst", String.valueOf(burst));
+        options.put(LIMIT_USER + ".rate", "0.001");
+        options.put(LIMIT_ISSUER + ".burst", String.valueOf(burst));
+        options.put(LIMIT_ISSUER + ".rate", "0.001");
+        // every login reaches the limiters
+        options.put(REJECTED_ENABLED, "false");
+        return options;
+    }
+
+    private static TokenRealm realm(Map<String, String> options) {
+        return TokenRealm.forOptions(TokenLoginModuleTest.class.getClassLoader(), options);
+    }
+
+    private static TokenLoginModule module(Map<String, String> options, String user, String token) {
+        TokenLoginModule module = new TokenLoginModule();
+        module.initialize(new Subject(), new UserTokenHandler(user, token), new HashMap<>(), options);
+        return module;
+    }
+
+    private static void assertLoginFails(Map<String, String> options, String user, String token, String message) {
+        try {
+            module(options, user, token).login();
+            fail("Login should fail");
+        } catch (LoginException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    private static void login(String name) throws Exception {
+        LoginContext context = new LoginContext(name, new UserTokenHandler("alice", TOKEN));
         try {
             context.login();
         } catch(LoginException e) {
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.jaas.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apifocal.activemix.jaas.commons.VerifiedTokenCache;
+import org.apifocal.activemix.jaas.commons.mappers.GroupsMapper;
+import org.apifocal.activemix.jaas.commons.verifiers.AuthorizedKeysStore;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+
+public class TokenRealmTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ClassLoader classLoader = TokenRealmTest.class.getClassLoader();
+
+    @After
+    public void tearDown() {
+        TokenRealm.clear();
+    }
+
+    @Test
+    public void testSharedByEqualOptions() {
+        TokenRealm realm = TokenRealm.forOptions(classLoader, options(new HashMap<>()));
+        TokenRealm other = TokenRealm.forOptions(classLoader, options(new TreeMap<>()));
+
+        assertSame(realm, other);
+        assertSame(realm.getValidators().get(0), other.getValidators().get(0));
+        assertSame(realm.getClaimMappers().get(0), other.getClaimMappers().get(0));
+        assertEquals(1, realm.getValidators().size());
+    }
+
+    @Test
+    public void testDistinctOptions() {
+        Map<String, String> options = options(new HashMap<>());
+        TokenRealm realm = TokenRealm.forOptions(classLoader, options);
+
+        options.put(TokenLoginModule.CACHE_ENABLED, "false");
+        TokenRealm other = TokenRealm.forOptions(classLoader, options);
+
+        assertNotSame(realm, other);
+        assertNull(other.getVerifiedTokens());
+    }
+
+    @Test
+    public void testOptionsCopied() {
+        Map<String, String> options = options(new HashMap<>());
+        TokenRealm realm = TokenRealm.forOptions(classLoader, options);
+        options.put("debug", "true");
+
+        // changing the caller's map later on must not change the options the realm was built for
+        assertNotSame(realm, TokenRealm.forOptions(classLoader, options));
+        assertSame(realm, TokenRealm.forOptions(classLoader, options(new HashMap<>())));
+    }
+
+    @Test
+    public void testGroupsReloadDropsVerifiedTokens() throws Exception {
+        File groups = folder.newFile();
+        Files.write(groups.toPath(), Arrays.asList("users=bob"), StandardCharsets.UTF_8);
+        Map<String, String> options = options(new HashMap<>());
+        options.put(TokenLoginModule.CLAIM_MAPPERS_CLASSES, "SubjectMapper, GroupsMapper");
+        options.put("claimMappers.GroupsMapper.file", groups.getAbsolutePath());
+        options.put("claimMappers.GroupsMapper.watch", "false");
+        TokenRealm realm = TokenRealm.forOptions(classLoader, options);
+        GroupsMapper mapper = (GroupsMapper) realm.getClaimMappers().get(1);
+
+        VerifiedTokenCache cache = realm.getVerifiedTokens();
+        cache.put(VerifiedTokenCache.key("token", "bob"), new JWTClaimsSet.Builder().subject("bob").build());
+        assertEquals(1, cache.size());
+
+        // cached principals were mapped with the previous rules
+        Files.write(groups.toPath(), Arrays.asList("users=alice"), StandardCharsets.UTF_8);
+        mapper.getRules().reload();
+        assertEquals(0, cache.size());
+
+        // a forgotten realm no longer listens
+        TokenRealm.clear();
+        cache.put(VerifiedTokenCache.key("token", "bob"), new JWTClaimsSet.Builder().subject("bob").build());
+        mapper.getRules().reload();
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testKeysReloadDropsVerifiedTokens() throws Exception {
+        File keys = folder.newFolder();
+        Files.copy(Paths.get("src/test/resources/keys/alice.keys"), keys.toPath().resolve("alice.keys"));
+        TokenRealm realm = TokenRealm.forOptions(classLoader, signerOptions(keys, "false"));
+
+        VerifiedTokenCache cache = realm.getVerifiedTokens();
+        AuthorizedKeysStore store = AuthorizedKeysStore.forDirectory(keys);
+        store.get("alice");
+        cache.put(VerifiedTokenCache.key("token", "alice"), new JWTClaimsSet.Builder().subject("alice").build());
+
+        // a revoked key must not keep accepting the tokens it signed
+        store.reload("alice");
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testClearStopsWatchingKeys() throws Exception {
+        File keys = folder.newFolder();
+        TokenRealm.forOptions(classLoader, signerOptions(keys, "true"));
+        assertTrue(AuthorizedKeysStore.forDirectory(keys).isWatched());
+
+        TokenRealm.clear();
+        assertFalse(AuthorizedKeysStore.forDirectory(keys).isWatched());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMissingValidators() {
+        Map<String, String> options = options(new HashMap<>());
+        options.remove(TokenLoginModule.VERIFIERS_CLASSES);
+        TokenRealm.forOptions(classLoader, options);
+    }
+
+    private static Map<String, String> signerOptions(File keys, String watch) {
+        Map<String, String> options = options(new HashMap<>());
+        options.put(TokenLoginModule.VERIFIERS_CLASSES, "TokenSignatureValidator, TokenSignerValidator");
+        options.put("verifiers.TokenSignerValidator.keys", keys.getAbsolutePath());
+        options.put("verifiers.TokenSignerValidator.watch", watch);
+        return options;
+    }
+
+    private static Map<String, String> options(Map<String, String> options) {
+        options.put(TokenLoginModule.VERIFIERS_PACKAGE, "org.apifocal.activemix.jaas.commons.verifiers");
+        options.put(TokenLoginModule.VERIFIERS_CLASSES, "TokenSignatureValidator");
+        options.put(TokenLoginModule.CLAIM_MAPPERS_PACKAGE, "org.apifocal.activemix.jaas.commons.mappers");
+        options.put(TokenLoginModule.CLAIM_MAPPERS_CLASSES, "SubjectMapper");
+        return options;
+    }
+
+}
@@ -15,19 +15,28 @@
  */
 package org.apifocal.activemix.tools.token;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.Serializable;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -37,11 +46,12 @@ import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apifocal.activemix.commons.Settings;
+import org.apifocal.activemix.jaas.commons.TokenMinter;
 import org.apifocal.activemix.jaas.commons.TokenValidationException;
 import org.apifocal.activemix.jaas.commons.Tokens;
+import org.apifocal.activemix.jaas.commons.verifiers.TokenSecurityContext;
 import org.apifocal.activemix.jaas.commons.verifiers.TokenSignerValidator;
 
-import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableSet;
 import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.SignedJWT;
@@ -54,9 +64,12 @@ public class TokenApp {
     private static final String ACTION_HELP = "help";
     private static final String ACTION_CREATE = "create";
     private static final String ACTION_SHOW = "show";
+    private static final String ACTION_VERIFY = "verify";
     private static final String[] HELP_USAGE = {"\n",
-        "  amx-token create [options] <signing-key>\n",
-        "  amx-token show [options] [<token>]"};
+        "  amx-token create [options] <signing-key>\n"
+        + "  amx-token create --batch <file> [--out <file>] [options] <signing-key>\n",
+        "  amx-token show [options] [<token>]\n",
+        "  amx-token verify --keys <keys> --batch <file> [--out <file>] [--skew <duration>]"};
     private static final String CLAIM_ACL = "acl";
     private static final String DEFAULT_ACL = "rw";
     private static final String DEFAULT_EXPIRES = "90d";
@@ -80,6 +93,12 @@ public class TokenApp {
         .builder().longOpt("keys").desc("Authorized keys file").hasArg(true).argName("keys").build();
     private static final Option OPTION_RAW = Option
         .builder().longOpt("raw").desc("Authorized keys file").hasArg(false).build();
+    private static final Option OPTION_BATCH = Option
+        .builder().longOpt("batch").desc("Batch input: manifest of tokens to create (CSV with header or JSON lines), or tokens to verify ('-' for stdin)").hasArg(true).argName("file").build();
+    private static final Option OPTION_OUT = Option
+        .builder().longOpt("out").desc("Output file of batch mode (default stdout)").hasArg(true).argName("file").build();
+    private static final Option OPTION_SKEW = Option
+        .builder().longOpt("skew").desc("Clock skew tolerated when checking expiration, e.g. 30s (default 0)").hasArg(true).argName("duration").build();
 
     private static final Option[] OPTIONS = {
             OPTION_HELP,
@@ -91,6 +110,9 @@ public class TokenApp {
             OPTION_VERIFY,
             OPTION_KEYS,
             OPTION_RAW,
+            OPTION_BATCH,
+            OPTION_OUT,
+            OPTION_SKEW,
     };
     private static final Option[] OPTIONS_CREATE = {
             OPTION_HELP,
@@ -99,6 +121,8 @@ public class TokenApp {
             OPTION_APP,
             OPTION_ACL,
             OPTION_EXPIRATION,
+            OPTION_BATCH,
+            OPTION_OUT,
     };
     private static final Option[] OPTIONS_SHOW = {
             OPTION_HELP,
@@ -106,6 +130,13 @@ public class TokenApp {
             OPTION_KEYS,
             OPTION_RAW,
     };
+    private static final Option[] OPTIONS_VERIFY = {
+            OPTION_HELP,
+            OPTION_KEYS,
+            OPTION_BATCH,
+            OPTION_OUT,
+            OPTION_SKEW,
+    };
 
     private static final String OPTIONS_FOOTER = "\n"
         + "Generates JWT token as password for ActiveMQ brokers\n"
@@ -139,9 +170,10 @@ public class TokenApp {
                 cli = parse(Arrays.copyOfRange(args, 1, args.length));
             }
 
-            boolean validArgs = !ImmutableSet.of(ACTION_HELP, ACTION_CREATE, ACTION_SHOW).contains(action) ? false
+            boolean validArgs = !ImmutableSet.of(ACTION_HELP, ACTION_CREATE, ACTION_SHOW, ACTION_VERIFY).contains(action) ? false
                 : ACTION_CREATE.equals(action) ? validateCreateArgs(cli)
                 : ACTION_SHOW.equals(action) ? validateShowArgs(cli)
+                : ACTION_VERIFY.equals(action) ? validateVerifyArgs(cli)
                 : cli.hasOption(OPTION_HELP.getOpt());
             if (!validArgs) {
                 throw new ParseException("Missing required arguments");
@@ -157,11 +189,15 @@ public class TokenApp {
         }
 
         try {
-            if (ACTION_CREATE.equals(action)) {
+            if (ACTION_CREATE.equals(action) && cli.hasOption("batch")) {
+                createTokens(cli);
+            } else if (ACTION_CREATE.equals(action)) {
                 String token = createToken(cli);
                 System.out.println(token != null ? token : "ERROR");
             } else if (ACTION_SHOW.equals(action)) {
                 showToken(cli);
+            } else if (ACTION_VERIFY.equals(action)) {
+                verifyTokens(cli);
             }
         } catch (Exception e) {
             System.out.println(e.getLocalizedMessage());
@@ -171,44 +207,105 @@ public class TokenApp {
 
     private static boolean validateCreateArgs(CommandLine cli) {
         // TODO: maybe log some verbose warnings
-        return cli.hasOption("h") || (cli.hasOption("u") && cli.hasOption("i") && cli.getArgs().length == 1);
+        return cli.hasOption("h") || ((cli.hasOption("batch") || (cli.hasOption("u") && cli.hasOption("i"))) && cli.getArgs().length == 1);
     }
 
     private static boolean validateShowArgs(CommandLine cli) {
         return cli.hasOption("h") || (cli.getArgs().length == 1 && (!cli.hasOption("verify") || cli.hasOption("keys")));
     }
 
+    private static boolean validateVerifyArgs(CommandLine cli) {
+        return cli.hasOption("h") || (cli.getArgs().length == 0 && cli.hasOption("keys") && cli.hasOption("batch"));
+    }
+
     public static String createToken(final CommandLine cli) throws Exception {
-        JWTClaimsSet.Builder claims = new JWTClaimsSet.Builder();
-        Tokens.subject(claims, Objects.requireNonNull(cli.getOptionValue("u"), "Missing option 'user'"));
-        Tokens.issuer(claims, Objects.requireNonNull(cli.getOptionValue("i"), "Missing option 'issuer'"));
+        String[] audience = cli.getOptionValues("a");
+        JWTClaimsSet claims = claims(Objects.requireNonNull(cli.getOptionValue("u"), "Missing option 'user'"),
+            Objects.requireNonNull(cli.getOptionValue("i"), "Missing option 'issuer'"),
+            audience != null ? Arrays.asList(audience) : Collections.emptyList(),
+            cli.getOptionValue("acl"), cli.getOptionValue("exp"), new Date());
+
+        String key =  cli.getArgs()[0]; // if argument validation was done well, this could not be null
+        return Tokens.createToken(claims, signingKey(key), new StdinPasswordProvider(key));
+    }
+
+    /**
+     * Creates the tokens of all entries in the batch manifest; the signing key is read once for all of them.
+     */
+    public static void createTokens(final CommandLine cli) throws Exception {
+        String key = cli.getArgs()[0];
+        TokenMinter minter = TokenMinter.forKey(signingKey(key), new StdinPasswordProvider(key));
 
+        Map<String, String> defaults = new HashMap<>();
+        defaults.put(TokenBatch.ISSUER, cli.getOptionValue("i"));
         String[] audience = cli.getOptionValues("a");
-        if (audience != null) {
-            if (audience.length == 1) {
-                Tokens.audience(claims, audience[0]);
-            } else if (audience.length > 1) {
-                Tokens.audience(claims, Arrays.asList(audience));
-            }            
+        defaults.put(TokenBatch.APP, audience != null ? String.join(";", audience) : null);
+        defaults.put(TokenBatch.ACL, cli.getOptionValue("acl"));
+        defaults.put(TokenBatch.EXP, cli.getOptionValue("exp"));
+
+        String manifest = cli.getOptionValue("batch");
+        String out = cli.getOptionValue("out");
+        try (BufferedReader input = "-".equals(manifest)
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(manifest), StandardCharsets.UTF_8);
+            Writer output = out != null
+                ? Files.newBufferedWriter(Paths.get(out), StandardCharsets.UTF_8)
+                : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))) {
+            new TokenBatch(minter, defaults).run(input, output);
+        }
+        // tokens may go to stdout, so the summary goes to stderr
+        System.err.println("Created " + minter.stats());
+    }
+
+    static JWTClaimsSet claims(String user, String issuer, List<String> apps, String acl, String exp, Date now) {
+        JWTClaimsSet.Builder claims = new JWTClaimsSet.Builder();
+        Tokens.subject(claims, user);
+        Tokens.issuer(claims, issuer);
+
+        if (apps.size() == 1) {
+            Tokens.audience(claims, apps.get(0));
+        } else if (apps.size() > 1) {
+            Tokens.audience(claims, apps);
         }
-        String acl = cli.getOptionValue("acl");
         Tokens.claim(claims, CLAIM_ACL, acl != null ? acl : DEFAULT_ACL);
 
-        String key =  cli.getArgs()[0]; // if argument validation was done well, this could not be null
+        // TODO: make it optional?
+        Tokens.issueTime(claims, now);
+        long lifespan = lifespan(exp);
+        if (lifespan > 0) {
+            Tokens.expiration(claims, new Date(now.getTime() + lifespan));
+        }
+        return claims.build();
+    }
+
+    private static Path signingKey(String key) {
         Path sk = Paths.get(key);
         if (!Files.exists(sk) || !Files.isRegularFile(sk)) {
             throw new IllegalArgumentException("Invalid signing key. Check command line arguments.");
         }
+        return sk;
+    }
 
-        // TODO: make it optional?
-        Date now = new Date();
-        Tokens.issueTime(claims, now);
-        long exp = lifespan(cli.getOptionValue("exp"));
-        if (exp > 0) {
-            Tokens.expiration(claims, new Date(now.getTime() + exp));
+    /**
+     * Verifies all tokens of the batch input and writes a report of their outcomes, one JSON line per token.
+     */
+    public static void verifyTokens(final CommandLine cli) throws Exception {
+        TokenAudit audit = new TokenAudit(cli.getOptionValue("keys"), cli.getOptionValue("skew", "0"));
+
+        String tokens = cli.getOptionValue("batch");
+        String out = cli.getOptionValue("out");
+        long start = System.nanoTime();
+        long count;
+        try (BufferedReader input = "-".equals(tokens)
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(tokens), StandardCharsets.UTF_8);
+            Writer output = out != null
+                ? Files.newBufferedWriter(Paths.get(out), StandardCharsets.UTF_8)
+                : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))) {
+            count = audit.run(input, output);
         }
-
-        return Tokens.createToken(claims.build(), new String(Files.readAllBytes(sk), Charsets.UTF_8), new StdinPasswordProvider(key));
+        System.err.println("Verified " + count + " tokens in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+            + "ms, " + audit.total(TokenAudit.Status.VALID) + " valid");
     }
 
     public static void showToken(final CommandLine cli) {
@@ -232,7 +329,8 @@ public class TokenApp {
             settings.put("keys", Objects.requireNonNull(cli.getOptionValue("keys")));
             TokenSignerValidator validator = new TokenSignerValidator(new Settings(settings));
             try {
-                validator.validate(parsedToken, null);
+                // keys are looked up by issuer, there are none without it
+                validator.validate(parsedToken, new TokenSecurityContext((String) claims.get("iss")));
                 builder.append("PASSED.");
             } catch (TokenValidationException e) {
                 builder.append("FAILED:\n").append("  ").append(e.getLocalizedMessage());
@@ -323,6 +421,8 @@ public class TokenApp {
             helpCreate(System.out);
         } else if (ACTION_SHOW.equals(action)) {
             helpShow(System.out);
+        } else if (ACTION_VERIFY.equals(action)) {
+            helpVerify(System.out);
         } else {
             help(System.out);
         }
@@ -334,7 +434,7 @@ public class TokenApp {
         PrintWriter pw = new PrintWriter(out);
         HelpFormatter formatter = new HelpFormatter();
         formatter.setOptionComparator(new CustomComparator());
-        formatter.printHelp(pw, HelpFormatter.DEFAULT_WIDTH, HELP_USAGE[0] + HELP_USAGE[1] + HELP_USAGE[2], "\nOptions:", filterOptions(fromArray(OPTIONS)),
+        formatter.printHelp(pw, HelpFormatter.DEFAULT_WIDTH, HELP_USAGE[0] + HELP_USAGE[1] + HELP_USAGE[2] + HELP_USAGE[3], "\nOptions:", filterOptions(fromArray(OPTIONS)),
              HelpFormatter.DEFAULT_LEFT_PAD, HelpFormatter.DEFAULT_DESC_PAD, OPTIONS_FOOTER, false);
         pw.flush();
     }
@@ -361,6 +461,17 @@ public class TokenApp {
         pw.flush();
     }
 
+    private static void helpVerify(PrintStream out) {
+        out.println();
+
+        PrintWriter pw = new PrintWriter(out);
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.setOptionComparator(new CustomComparator());
+        formatter.printHelp(pw, HelpFormatter.DEFAULT_WIDTH, HELP_USAGE[0] + HELP_USAGE[3], "\nOptions:", filterOptions(fromArray(OPTIONS_VERIFY)),
+             HelpFormatter.DEFAULT_LEFT_PAD, HelpFormatter.DEFAULT_DESC_PAD, OPTIONS_FOOTER, false);
+        pw.flush();
+    }
+
     private static Options filterOptions(Options options) {
         Options result = new Options();
         options.getOptions().forEach(o -> {
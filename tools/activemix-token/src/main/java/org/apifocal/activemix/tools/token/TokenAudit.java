@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.tools.token;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import org.apifocal.activemix.commons.Settings;
+import org.apifocal.activemix.jaas.commons.TokenValidationException;
+import org.apifocal.activemix.jaas.commons.verifiers.AuthorizedKeysStore;
+import org.apifocal.activemix.jaas.commons.verifiers.ExpirationValidator;
+import org.apifocal.activemix.jaas.commons.verifiers.TokenSecurityContext;
+import org.apifocal.activemix.jaas.commons.verifiers.TokenSignerValidator;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+import net.minidev.json.JSONObject;
+
+/**
+ * Verifies all tokens of an inventory, one token per line, against the authorized keys of their issuers.
+ *
+ * Each token is reported on a line of JSON in the order of the input, with its outcome and the time
+ * taken to verify it; the last line holds the totals per outcome and a histogram of verification times.
+ * The authorized keys are loaded once and shared by all tokens, which are verified in parallel in chunks
+ * so memory use does not grow with the size of the inventory. Unlike at login, expiration times are
+ * strict unless a clock 'skew' is given; an audit should report tokens past their expiration.
+ */
+final class TokenAudit {
+
+    enum Status {
+        VALID("valid"),
+        EXPIRED("expired"),
+        BAD_SIGNATURE("bad-signature"),
+        UNKNOWN_ISSUER("unknown-issuer"),
+        MALFORMED("malformed");
+
+        private final String label;
+
+        Status(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    // upper bounds of the latency histogram buckets, in microseconds; the last bucket is unbounded
+    private static final long[] BUCKETS = {100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 100_000};
+    private static final int CHUNK_SIZE = 1024;
+
+    private final TokenSignerValidator signer;
+    private final ExpirationValidator expiration;
+    private final AuthorizedKeysStore store;
+    private final Map<Status, LongAdder> totals = new EnumMap<>(Status.class);
+    private final LongAdder[] latency = new LongAdder[BUCKETS.length + 1];
+    private long line;
+
+    TokenAudit(String keys, String skew) {
+        Map<String, String> settings = new LinkedHashMap<>();
+        settings.put("keys", keys);
+        settings.put("watch", "false");
+        this.signer = new TokenSignerValidator(new Settings(settings));
+        this.expiration = new ExpirationValidator(new Settings(Collections.singletonMap("skew", skew)));
+        // a single keys file holds the keys of all issuers, none is unknown
+        File location = new File(keys);
+        this.store = location.isDirectory() ? AuthorizedKeysStore.forDirectory(location) : null;
+
+        for (Status status : Status.values()) {
+            totals.put(status, new LongAdder());
+        }
+        for (int i = 0; i < latency.length; i++) {
+            latency[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @return the number of tokens verified
+     */
+    long run(BufferedReader input, Writer output) throws IOException {
+        long count = 0;
+        List<Entry> chunk = new ArrayList<>(CHUNK_SIZE);
+        String text;
+        while ((text = input.readLine()) != null) {
+            line++;
+            text = text.trim();
+            if (!text.isEmpty() && !text.startsWith("#")) {
+                chunk.add(new Entry(line, text));
+            }
+            if (chunk.size() == CHUNK_SIZE) {
+                count += write(chunk, output);
+            }
+        }
+        count += write(chunk, output);
+        output.write(JSONObject.toJSONString(summary()));
+        output.write('\n');
+        output.flush();
+        return count;
+    }
+
+    long total(Status status) {
+        return totals.get(status).sum();
+    }
+
+    private long write(List<Entry> chunk, Writer output) throws IOException {
+        List<String> reports = chunk.parallelStream().map(this::verify).collect(Collectors.toList());
+        for (String report : reports) {
+            output.write(report);
+            output.write('\n');
+        }
+        int size = chunk.size();
+        chunk.clear();
+        return size;
+    }
+
+    private String verify(Entry entry) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("line", entry.line);
+
+        long start = System.nanoTime();
+        Status status;
+        try {
+            SignedJWT token = SignedJWT.parse(entry.token);
+            JWTClaimsSet claims = token.getJWTClaimsSet();
+            report.put("iss", claims.getIssuer());
+            report.put("sub", claims.getSubject());
+            status = verify(token, claims.getIssuer());
+        } catch (ParseException e) {
+            status = Status.MALFORMED;
+        }
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+
+        totals.get(status).increment();
+        latency[bucket(micros)].increment();
+        report.put("status", status.toString());
+        report.put("micros", micros);
+        return JSONObject.toJSONString(report);
+    }
+
+    private Status verify(SignedJWT token, String issuer) {
+        if (issuer == null || (store != null && store.get(issuer).isEmpty())) {
+            return Status.UNKNOWN_ISSUER;
+        }
+        try {
+            signer.validate(token, new TokenSecurityContext(issuer));
+        } catch (TokenValidationException e) {
+            return Status.BAD_SIGNATURE;
+        }
+        try {
+            expiration.validate(token, new TokenSecurityContext(issuer));
+        } catch (TokenValidationException e) {
+            return Status.EXPIRED;
+        }
+        return Status.VALID;
+    }
+
+    private Map<String, Object> summary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        long total = 0;
+        for (Status status : Status.values()) {
+            long count = total(status);
+            summary.put(status.toString(), count);
+            total += count;
+        }
+        summary.put("total", total);
+
+        Map<String, Object> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < BUCKETS.length; i++) {
+            histogram.put("<=" + BUCKETS[i] + "us", latency[i].sum());
+        }
+        histogram.put(">" + BUCKETS[BUCKETS.length - 1] + "us", latency[BUCKETS.length].sum());
+        summary.put("latency", histogram);
+        return Collections.singletonMap("summary", summary);
+    }
+
+    private static int bucket(long micros) {
+        int i = 0;
+        while (i < BUCKETS.length && micros > BUCKETS[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    private static final class Entry {
+        private final long line;
+        private final String token;
+
+        private Entry(long line, String token) {
+            this.line = line;
+            this.token = token;
+        }
+    }
+
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.tools.token;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apifocal.activemix.jaas.commons.TokenMinter;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.util.JSONObjectUtils;
+import com.nimbusds.jwt.JWTClaimsSet;
+
+/**
+ * Creates the tokens of all entries of a manifest, one token per line of output in the order of the manifest.
+ *
+ * Each manifest line is either a JSON object or a CSV record; CSV records need a header line naming
+ * their columns first. Known fields are 'user', 'issuer', 'app', 'acl' and 'exp'; all but 'user' fall
+ * back to the command line options. Several apps are given as a JSON array or separated by ';'.
+ *
+ * The manifest is read in chunks, each signed in parallel and written before the next one is read,
+ * so memory use does not grow with the size of the manifest.
+ */
+final class TokenBatch {
+
+    static final String USER = "user";
+    static final String ISSUER = "issuer";
+    static final String APP = "app";
+    static final String ACL = "acl";
+    static final String EXP = "exp";
+
+    private static final int CHUNK_SIZE = 1024;
+
+    private final TokenMinter minter;
+    private final Map<String, String> defaults;
+    private List<String> header;
+    private long line;
+
+    TokenBatch(TokenMinter minter, Map<String, String> defaults) {
+        this.minter = minter;
+        this.defaults = defaults;
+    }
+
+    /**
+     * @return the number of tokens written
+     */
+    long run(BufferedReader input, Writer output) throws IOException, JOSEException {
+        long count = 0;
+        List<JWTClaimsSet> chunk = new ArrayList<>(CHUNK_SIZE);
+        String text;
+        while ((text = input.readLine()) != null) {
+            line++;
+            JWTClaimsSet claims = claims(text.trim());
+            if (claims != null) {
+                chunk.add(claims);
+            }
+            if (chunk.size() == CHUNK_SIZE) {
+                count += write(chunk, output);
+            }
+        }
+        count += write(chunk, output);
+        output.flush();
+        return count;
+    }
+
+    private long write(List<JWTClaimsSet> chunk, Writer output) throws IOException, JOSEException {
+        for (String token : minter.mint(chunk.stream())) {
+            output.write(token);
+            output.write('\n');
+        }
+        int size = chunk.size();
+        chunk.clear();
+        return size;
+    }
+
+    private JWTClaimsSet claims(String text) {
+        if (text.isEmpty() || text.startsWith("#")) {
+            return null;
+        }
+
+        Map<String, Object> entry;
+        if (text.startsWith("{")) {
+            try {
+                entry = JSONObjectUtils.parse(text);
+            } catch (ParseException e) {
+                throw invalid("not a JSON object: " + e.getMessage());
+            }
+        } else if (header == null) {
+            header = csv(text);
+            if (!header.contains(USER)) {
+                throw invalid("CSV header without '" + USER + "' column");
+            }
+            return null;
+        } else {
+            List<String> values = csv(text);
+            entry = new HashMap<>();
+            for (int i = 0; i < header.size() && i < values.size(); i++) {
+                String value = values.get(i);
+                entry.put(header.get(i), value);
+            }
+        }
+
+        String user = string(entry, USER);
+        if (user == null) {
+            throw invalid("missing '" + USER + "'");
+        }
+        String issuer = string(entry, ISSUER);
+        if (issuer == null) {
+            throw invalid("missing '" + ISSUER + "'");
+        }
+        return TokenApp.claims(user, issuer, apps(entry.get(APP)), string(entry, ACL), string(entry, EXP), new Date());
+    }
+
+    private String string(Map<String, Object> entry, String field) {
+        Object value = entry.get(field);
+        String text = value != null ? value.toString().trim() : "";
+        return !text.isEmpty() ? text : defaults.get(field);
+    }
+
+    private List<String> apps(Object value) {
+        List<String> apps = split(value);
+        return apps.isEmpty() ? split(defaults.get(APP)) : apps;
+    }
+
+    private static List<String> split(Object value) {
+        List<?> values = value instanceof List ? (List<?>) value
+            : value != null ? Arrays.asList(value.toString().split(";")) : Collections.emptyList();
+        return values.stream().map(app -> app.toString().trim()).filter(app -> !app.isEmpty()).collect(Collectors.toList());
+    }
+
+    private IllegalArgumentException invalid(String message) {
+        return new IllegalArgumentException("Invalid manifest line " + line + ": " + message);
+    }
+
+    /**
+     * Splits a CSV record; fields may be quoted, quotes within quoted fields are doubled.
+     */
+    static List<String> csv(String record) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < record.length(); i++) {
+            char c = record.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < record.length() && record.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.tools.token;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Paths;
+import java.util.Date;
+import java.util.Map;
+
+import org.apifocal.activemix.jaas.commons.TokenMinter;
+import org.apifocal.activemix.jaas.commons.Tokens;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.nimbusds.jose.util.JSONObjectUtils;
+import com.nimbusds.jwt.JWTClaimsSet;
+
+public class TokenAuditTest {
+
+    private static final String KEYS = "src/test/resources/keys";
+
+    private static TokenMinter bob;
+    private static TokenMinter alice;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        bob = TokenMinter.forKey(Paths.get("src/test/resources/ssh/id_rsa-bob"), null);
+        alice = TokenMinter.forKey(Paths.get("src/test/resources/ssh/id_rsa-alice"), null);
+    }
+
+    @Test
+    public void testStatus() throws Exception {
+        TokenAudit audit = new TokenAudit(KEYS, "0");
+        String[] report = run(audit,
+            bob.mint(claims("bob", Tokens.minutes(5))),
+            bob.mint(claims("bob", -Tokens.seconds(5))),
+            alice.mint(claims("bob", Tokens.minutes(5))),
+            bob.mint(claims("eve", Tokens.minutes(5))),
+            "",
+            "not-a-token");
+
+        assertEquals(6, report.length);
+        assertEquals("valid", status(report[0]));
+        assertEquals("expired", status(report[1]));
+        assertEquals("bad-signature", status(report[2]));
+        assertEquals("unknown-issuer", status(report[3]));
+        assertEquals("malformed", status(report[4]));
+        assertEquals(6L, ((Number) JSONObjectUtils.parse(report[4]).get("line")).longValue());
+
+        for (TokenAudit.Status status : TokenAudit.Status.values()) {
+            assertEquals(status.toString(), 1, audit.total(status));
+        }
+    }
+
+    @Test
+    public void testSkew() throws Exception {
+        String expired = bob.mint(claims("bob", -Tokens.seconds(5)));
+
+        assertEquals("expired", status(run(new TokenAudit(KEYS, "0"), expired)[0]));
+        assertEquals("valid", status(run(new TokenAudit(KEYS, "1m"), expired)[0]));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSummary() throws Exception {
+        String token = bob.mint(claims("bob", Tokens.minutes(5)));
+        String[] report = run(new TokenAudit(KEYS, "0"), token, token, "not-a-token");
+
+        Map<String, Object> summary = (Map<String, Object>) JSONObjectUtils.parse(report[3]).get("summary");
+        assertEquals(2L, ((Number) summary.get("valid")).longValue());
+        assertEquals(1L, ((Number) summary.get("malformed")).longValue());
+        assertEquals(0L, ((Number) summary.get("expired")).longValue());
+        assertEquals(3L, ((Number) summary.get("total")).longValue());
+
+        // every token lands in exactly one latency bucket
+        Map<String, Object> latency = (Map<String, Object>) summary.get("latency");
+        assertEquals(10, latency.size());
+        assertEquals(3L, latency.values().stream().mapToLong(count -> ((Number) count).longValue()).sum());
+    }
+
+    private static JWTClaimsSet claims(String issuer, long expiresIn) {
+        Date now = new Date();
+        return new JWTClaimsSet.Builder()
+            .subject("alice")
+            .issuer(issuer)
+            .issueTime(now)
+            .expirationTime(new Date(now.getTime() + expiresIn))
+            .build();
+    }
+
+    private static String[] run(TokenAudit audit, String ... tokens) throws Exception {
+        StringWriter output = new StringWriter();
+        audit.run(new BufferedReader(new StringReader(String.join("\n", tokens))), output);
+        return output.toString().split("\n");
+    }
+
+    private static String status(String report) throws Exception {
+        return (String) JSONObjectUtils.parse(report).get("status");
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2017-2020 apifocal LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apifocal.activemix.tools.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apifocal.activemix.jaas.commons.TokenMinter;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+public class TokenBatchTest {
+
+    private static TokenMinter minter;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        minter = new TokenMinter(generator.generateKeyPair());
+    }
+
+    @Test
+    public void testCsvQuoting() {
+        assertEquals(Arrays.asList("alice", "acme, inc", "say \"hi\"", ""), TokenBatch.csv("alice, \"acme, inc\",\"say \"\"hi\"\"\","));
+        assertEquals(Arrays.asList(""), TokenBatch.csv(""));
+    }
+
+    @Test
+    public void testCsvManifest() throws Exception {
+        List<JWTClaimsSet> tokens = run(defaults(),
+            "user,issuer,app,acl",
+            "",
+            "# comment",
+            "alice,acme,\"orders;billing\",r",
+            "bob,,,");
+
+        assertEquals(2, tokens.size());
+        JWTClaimsSet alice = tokens.get(0);
+        assertEquals("alice", alice.getSubject());
+        assertEquals("acme", alice.getIssuer());
+        assertEquals(Arrays.asList("orders", "billing"), alice.getAudience());
+        assertEquals("r", alice.getClaim("acl"));
+
+        // empty fields fall back to the command line options
+        JWTClaimsSet bob = tokens.get(1);
+        assertEquals("bob", bob.getSubject());
+        assertEquals("tenant", bob.getIssuer());
+        assertEquals(Arrays.asList("web"), bob.getAudience());
+        assertEquals("rw", bob.getClaim("acl"));
+    }
+
+    @Test
+    public void testJsonManifest() throws Exception {
+        List<JWTClaimsSet> tokens = run(defaults(),
+            "{\"user\": \"alice\", \"app\": [\"orders\", \"billing\"], \"exp\": \"never\"}",
+            "{\"user\": \"bob\", \"issuer\": \"acme\"}");
+
+        assertEquals(2, tokens.size());
+        assertEquals("tenant", tokens.get(0).getIssuer());
+        assertEquals(Arrays.asList("orders", "billing"), tokens.get(0).getAudience());
+        assertNull(tokens.get(0).getExpirationTime());
+        assertEquals("acme", tokens.get(1).getIssuer());
+        assertTrue(tokens.get(1).getExpirationTime().getTime() > System.currentTimeMillis());
+    }
+
+    @Test
+    public void testInvalidRowReported() throws Exception {
+        assertInvalid("Invalid manifest line 3: missing 'issuer'", new HashMap<>(),
+            "user,issuer", "alice,acme", "bob,");
+        assertInvalid("Invalid manifest line 2: missing 'user'", defaults(),
+            "{\"user\": \"alice\"}", "{\"issuer\": \"acme\"}");
+        assertInvalid("Invalid manifest line 1: CSV header without 'user' column", defaults(),
+            "name,issuer");
+        assertTrue(invalid(defaults(), "{\"user\": ").startsWith("Invalid manifest line 1: not a JSON object"));
+    }
+
+    private static Map<String, String> defaults() {
+        Map<String, String> defaults = new HashMap<>();
+        defaults.put(TokenBatch.ISSUER, "tenant");
+        defaults.put(TokenBatch.APP, "web");
+        return defaults;
+    }
+
+    private static List<JWTClaimsSet> run(Map<String, String> defaults, String ... manifest) throws Exception {
+        StringWriter output = new StringWriter();
+        long count = new TokenBatch(minter, defaults).run(reader(manifest), output);
+
+        List<JWTClaimsSet> tokens = new ArrayList<>();
+        for (String token : output.toString().split("\n")) {
+            tokens.add(SignedJWT.parse(token).getJWTClaimsSet());
+        }
+        assertEquals(count, tokens.size());
+        return tokens;
+    }
+
+    private static void assertInvalid(String message, Map<String, String> defaults, String ... manifest) throws Exception {
+        assertEquals(message, invalid(defaults, manifest));
+    }
+
+    private static String invalid(Map<String, String> defaults, String ... manifest) throws Exception {
+        try {
+            new TokenBatch(minter, defaults).run(reader(manifest), new StringWriter());
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+        fail("Manifest should be rejected");
+        return null;
+    }
+
+    private static BufferedReader reader(String ... manifest) {
+        return new BufferedReader(new StringReader(String.join("\n", manifest)));
+    }
+
+}